@@ -0,0 +1,146 @@
+package benchmarks;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+
+import connection.ConnectionFactory;
+
+/**
+ * The embedded database the benchmarks run against: an in-memory H2
+ * database in MySQL mode, with the same tables as the real one, filled
+ * with generated data. The data comes from a fixed seed, so that every
+ * run (and every fork) measures the same rows.
+ * <br>
+ * The application finds the database through {@link ConnectionFactory},
+ * so every forked benchmark JVM must be started with {@link #JVM_ARG}.
+ */
+public final class BenchmarkDatabase {
+	/**
+	 * The URL of the embedded database. The database lives
+	 * as long as the JVM does, not just as long as a connection.
+	 */
+	public static final String URL = "jdbc:h2:mem:bench;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+	/**
+	 * The JVM argument that points {@link ConnectionFactory} at the
+	 * embedded database; meant for the benchmarks' @Fork annotations.
+	 */
+	public static final String JVM_ARG = "-D" + ConnectionFactory.URL_PROPERTY + "=" + URL;
+
+	public static final int ITEMS = 1000;
+	public static final int USERS = 200;
+	public static final int ORDERS = 2000;
+	public static final int MAX_LINES_PER_ORDER = 5;
+
+	private static final long SEED = 42;
+
+	private static final String[] SCHEMA = {
+			"CREATE TABLE IF NOT EXISTS `Item` (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(50), "
+			+ "price DECIMAL(10, 2), stock INT)",
+			"CREATE TABLE IF NOT EXISTS `User` (id INT AUTO_INCREMENT PRIMARY KEY, email VARCHAR(50))",
+			"CREATE TABLE IF NOT EXISTS `Order` (id INT AUTO_INCREMENT PRIMARY KEY, user_id INT, "
+			+ "noOfItems INT NOT NULL DEFAULT 0, totalPrice DECIMAL(12, 2) NOT NULL DEFAULT 0)",
+			"CREATE TABLE IF NOT EXISTS `OrderItem` (id INT AUTO_INCREMENT PRIMARY KEY, order_id INT, "
+			+ "item_id INT, amount INT)",
+			"CREATE INDEX IF NOT EXISTS orderitem_order ON `OrderItem` (order_id)",
+			"CREATE INDEX IF NOT EXISTS orderitem_item ON `OrderItem` (item_id)"
+	};
+
+	// Same as in sql/order_totals.sql
+	private static final String BACKFILL_TOTALS = "UPDATE `Order` o SET "
+			+ "noOfItems = (SELECT COALESCE(SUM(oi.amount), 0) FROM `OrderItem` oi WHERE oi.order_id = o.id), "
+			+ "totalPrice = (SELECT COALESCE(SUM(oi.amount * i.price), 0) FROM `OrderItem` oi "
+			+ "JOIN `Item` i ON i.id = oi.item_id WHERE oi.order_id = o.id)";
+
+	private BenchmarkDatabase() {
+		// Static helper; not meant to be instantiated
+	}
+
+	/**
+	 * Creates the tables and fills them in, unless that has already
+	 * been done in this JVM. Meant to be called from the benchmarks'
+	 * trial-level setup methods.
+	 * @throws SQLException if the database could not be set up
+	 */
+	public static synchronized void setUp() throws SQLException {
+		Connection connection = ConnectionFactory.getConnection();
+		if(null == connection) throw new SQLException("Could not connect to " + URL);
+
+		try (Statement statement = connection.createStatement()) {
+			for(String ddl : SCHEMA) {
+				statement.execute(ddl);
+			}
+			try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM `Item`")) {
+				rs.next();
+				if(rs.getInt(1) > 0) return; // Already filled in
+			}
+
+			boolean autoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+			try {
+				populate(connection);
+				statement.executeUpdate(BACKFILL_TOTALS);
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(autoCommit);
+			}
+		} finally {
+			ConnectionFactory.close(connection);
+		}
+	}
+
+	private static void populate(Connection connection) throws SQLException {
+		Random random = new Random(SEED);
+
+		try (PreparedStatement ps = connection.prepareStatement(
+				"INSERT INTO `Item` (name, price, stock) VALUES (?, ?, ?)")) {
+			for(int i = 1; i <= ITEMS; ++i) {
+				ps.setString(1, "Item " + i);
+				ps.setBigDecimal(2, BigDecimal.valueOf(100 + random.nextInt(100000), 2));
+				ps.setInt(3, random.nextInt(1000));
+				ps.addBatch();
+			}
+			ps.executeBatch();
+		}
+
+		try (PreparedStatement ps = connection.prepareStatement(
+				"INSERT INTO `User` (email) VALUES (?)")) {
+			for(int i = 1; i <= USERS; ++i) {
+				ps.setString(1, "user" + i + "@example.com");
+				ps.addBatch();
+			}
+			ps.executeBatch();
+		}
+
+		try (PreparedStatement ps = connection.prepareStatement(
+				"INSERT INTO `Order` (user_id) VALUES (?)")) {
+			for(int i = 1; i <= ORDERS; ++i) {
+				ps.setInt(1, 1 + random.nextInt(USERS));
+				ps.addBatch();
+			}
+			ps.executeBatch();
+		}
+
+		try (PreparedStatement ps = connection.prepareStatement(
+				"INSERT INTO `OrderItem` (order_id, item_id, amount) VALUES (?, ?, ?)")) {
+			for(int order = 1; order <= ORDERS; ++order) {
+				int lines = 1 + random.nextInt(MAX_LINES_PER_ORDER);
+				for(int line = 0; line < lines; ++line) {
+					ps.setInt(1, order);
+					ps.setInt(2, 1 + random.nextInt(ITEMS));
+					ps.setInt(3, 1 + random.nextInt(10));
+					ps.addBatch();
+				}
+			}
+			ps.executeBatch();
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks, and writes their results as JSON to
+ * {@value #RESULT_FILE}, so that runs can be compared by tools.
+ * Takes the usual JMH command line options, which win over these
+ * defaults; e.g. <code>java -jar benchmarks.jar Mapping -rf csv</code>
+ * runs only the mapping benchmarks, and writes CSV instead.
+ */
+public final class BenchmarkRunner {
+	public static final String RESULT_FILE = "target/jmh-result.json";
+
+	private BenchmarkRunner() {
+		// Static entry point; not meant to be instantiated
+	}
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		Options options = new OptionsBuilder()
+				.parent(commandLine)
+				.resultFormat(commandLine.getResultFormat().orElse(ResultFormatType.JSON))
+				.result(commandLine.getResult().orElse(RESULT_FILE))
+				.build();
+		new Runner(options).run();
+	}
+}
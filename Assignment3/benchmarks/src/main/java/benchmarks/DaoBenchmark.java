@@ -0,0 +1,73 @@
+package benchmarks;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dao.ItemDAO;
+import dao.OrderDAO;
+import dao.Projection;
+import model.Item;
+import model.Order;
+
+/**
+ * Measures the latency of the DAOs' basic reads against the embedded
+ * database: one row by primary key, and whole tables, with every
+ * column or only a few (see {@link Projection}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.JVM_ARG)
+public class DaoBenchmark {
+	private ItemDAO itemDao;
+	private OrderDAO orderDao;
+	private Projection<Item> itemPrices;
+
+	@Setup
+	public void setUp() throws SQLException {
+		BenchmarkDatabase.setUp();
+		itemDao = new ItemDAO();
+		orderDao = new OrderDAO();
+		itemPrices = itemDao.projection("price");
+	}
+
+	@Benchmark
+	public Item itemFindById() {
+		return itemDao.findById(1 + ThreadLocalRandom.current().nextInt(BenchmarkDatabase.ITEMS));
+	}
+
+	@Benchmark
+	public List<Item> itemFindAll() {
+		return itemDao.findAll();
+	}
+
+	@Benchmark
+	public List<Item> itemFindAllPrices() {
+		return itemDao.findAll(itemPrices);
+	}
+
+	@Benchmark
+	public Order orderFindById() {
+		return orderDao.findById(1 + ThreadLocalRandom.current().nextInt(BenchmarkDatabase.ORDERS));
+	}
+
+	@Benchmark
+	public List<Order> orderFindAll() {
+		return orderDao.findAll();
+	}
+}
@@ -0,0 +1,65 @@
+package benchmarks;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import business.managers.ItemManager;
+import business.managers.OrderItemManager;
+import business.managers.OrderManager;
+import dto.OrderDTO;
+import dto.OrderItemDTO;
+
+/**
+ * Measures the managers' reads end to end, as the views use them:
+ * DAO, mapping, conversion to DTOs, and whatever caching the
+ * managers do in between.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.JVM_ARG)
+public class ManagerBenchmark {
+	private OrderManager orderMan;
+	private OrderItemManager orderItemMan;
+
+	@Setup
+	public void setUp() throws SQLException {
+		BenchmarkDatabase.setUp();
+		ItemManager itemMan = new ItemManager(); // Shared, like in the Controller
+		orderMan = new OrderManager(itemMan);
+		orderItemMan = new OrderItemManager(itemMan);
+	}
+
+	/**
+	 * Lists every order ({@value BenchmarkDatabase#ORDERS} of them).
+	 * @return The orders
+	 */
+	@Benchmark
+	public List<OrderDTO> orderGetAll() {
+		return orderMan.getAll();
+	}
+
+	/**
+	 * Lists the lines of a random order, as the cart view does.
+	 * @return The order's lines
+	 */
+	@Benchmark
+	public List<OrderItemDTO> orderItemGetByOrderId() {
+		return orderItemMan.getByOrderId(1 + ThreadLocalRandom.current().nextInt(BenchmarkDatabase.ORDERS));
+	}
+}
@@ -0,0 +1,118 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import benchmarks.BenchmarkDatabase;
+import connection.ConnectionFactory;
+import model.Item;
+import model.OrderItem;
+
+/**
+ * Measures the DAOs' work that does not touch the database: turning
+ * rows into objects ({@link AbstractDAO#createObjects(ResultSet)}) and
+ * building the SQL statements. The rows are read once, into disconnected
+ * {@link CachedRowSet}s, so that only the mapping itself is timed.
+ * <br>
+ * Lives in the dao package to reach the DAOs' protected methods.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.JVM_ARG)
+public class MappingBenchmark {
+	private ItemDAO itemDao;
+	private OrderItemDAO orderItemDao;
+
+	private CachedRowSet items;
+	private CachedRowSet orderItems;
+
+	@Setup
+	public void setUp() throws SQLException {
+		BenchmarkDatabase.setUp();
+		itemDao = new ItemDAO();
+		orderItemDao = new OrderItemDAO();
+
+		items = load("SELECT * FROM `Item`");
+		orderItems = load("SELECT * FROM `OrderItem`");
+	}
+
+	@TearDown
+	public void tearDown() throws SQLException {
+		items.close();
+		orderItems.close();
+	}
+
+	/**
+	 * Maps every Item row ({@value BenchmarkDatabase#ITEMS} of them).
+	 * @return The Items
+	 */
+	@Benchmark
+	public List<Item> createItems() throws SQLException {
+		items.beforeFirst();
+		return itemDao.createObjects(items);
+	}
+
+	/**
+	 * Maps every OrderItem row (about three per order).
+	 * @return The OrderItems
+	 */
+	@Benchmark
+	public List<OrderItem> createOrderItems() throws SQLException {
+		orderItems.beforeFirst();
+		return orderItemDao.createObjects(orderItems);
+	}
+
+	@Benchmark
+	public String createSelectQuery() {
+		return itemDao.createSelectQuery("id");
+	}
+
+	@Benchmark
+	public String createInsertQuery() {
+		return itemDao.createInsertQuery();
+	}
+
+	@Benchmark
+	public String createUpdateQuery() {
+		return itemDao.createUpdateQuery("id");
+	}
+
+	@Benchmark
+	public String createDeleteQuery() {
+		return itemDao.createDeleteQuery("id");
+	}
+
+	private static CachedRowSet load(String query) throws SQLException {
+		Connection connection = ConnectionFactory.getConnection();
+		try (Statement statement = connection.createStatement();
+			 ResultSet rs = statement.executeQuery(query)) {
+			CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+			rows.populate(rs);
+			return rows;
+		} finally {
+			ConnectionFactory.close(connection);
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package presentation;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import dto.ItemDTO;
+
+/**
+ * Measures {@link GenericTableModel#getValueAt(int, int)}, which the
+ * table calls for every visible cell on every repaint. Needs no
+ * database; the rows are made up.
+ * <br>
+ * Lives in the presentation package to reach the package-visible model.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableModelBenchmark {
+	private static final int ROWS = 1000;
+
+	private GenericTableModel<ItemDTO> model;
+
+	@Setup
+	public void setUp() {
+		List<ItemDTO> data = new ArrayList<ItemDTO>();
+		for(int i = 1; i <= ROWS; ++i) {
+			ItemDTO item = new ItemDTO();
+			item.setId(i);
+			item.setName("Item " + i);
+			item.setPrice(BigDecimal.valueOf(i, 2));
+			item.setStock(i % 100);
+			data.add(item);
+		}
+		model = new GenericTableModel<ItemDTO>(data, ItemDTO.class);
+	}
+
+	/**
+	 * Reads every cell of the table once, like a full repaint would.
+	 * @param bh - consumes the values, so that none is optimised away
+	 */
+	@Benchmark
+	public void getValueAtAllCells(Blackhole bh) {
+		for(int row = 0; row < model.getRowCount(); ++row) {
+			for(int col = 0; col < model.getColumnCount(); ++col) {
+				bh.consume(model.getValueAt(row, col));
+			}
+		}
+	}
+}
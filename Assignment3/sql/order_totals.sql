@@ -0,0 +1,13 @@
+-- Stores each order's number of items and total price with the order itself,
+-- instead of working them out from its lines on every read. From now on, the
+-- application keeps them up to date whenever an order's lines change.
+
+ALTER TABLE `Order`
+	ADD COLUMN noOfItems INT NOT NULL DEFAULT 0,
+	ADD COLUMN totalPrice DECIMAL(12, 2) NOT NULL DEFAULT 0;
+
+-- Fill in the totals of the orders that already exist
+UPDATE `Order` o SET
+	noOfItems = (SELECT COALESCE(SUM(oi.amount), 0) FROM `OrderItem` oi WHERE oi.order_id = o.id),
+	totalPrice = (SELECT COALESCE(SUM(oi.amount * i.price), 0) FROM `OrderItem` oi
+				  JOIN `Item` i ON i.id = oi.item_id WHERE oi.order_id = o.id);
@@ -0,0 +1,42 @@
+package business.cache;
+
+import lombok.Value;
+
+/**
+ * An immutable snapshot of a {@link ReadThroughCache}'s
+ * size and counters.
+ */
+@Value
+public class CacheStatistics {
+	private int size;
+	private int maxSize;
+	
+	private long hitCount;
+	private long missCount;
+	/** Entries pushed out to make room for newer ones */
+	private long evictionCount;
+	/** Entries dropped because they outlived the time-to-live */
+	private long expiredCount;
+	private long loadCount;
+	/** Total time spent in the loader, in nanoseconds */
+	private long totalLoadNanos;
+	
+	/**
+	 * Returns the fraction of lookups that were served
+	 * from the cache, or 0 if there were no lookups.
+	 * @return A number between 0 and 1
+	 */
+	public double getHitRatio() {
+		long lookups = hitCount + missCount;
+		return 0 == lookups ? 0.0 : (double) hitCount / lookups;
+	}
+	
+	/**
+	 * Returns the average time a load took, in
+	 * milliseconds, or 0 if nothing was loaded.
+	 * @return The average load latency
+	 */
+	public double getAverageLoadMillis() {
+		return 0 == loadCount ? 0.0 : totalLoadNanos / 1e6 / loadCount;
+	}
+}
@@ -0,0 +1,139 @@
+package business.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * A bounded, thread-safe cache keyed by id. Lookups that miss
+ * go to the loader (typically a DAO's findById) and remember the
+ * result. When the cache is full, the least recently used entry
+ * is dropped; entries may also be given a time-to-live, after
+ * which they are loaded again.
+ * <br>
+ * Writers are expected to {@link #invalidate(int)} the entries
+ * they change. A load that was already under way when its entry
+ * got invalidated is returned to its caller, but not cached, so
+ * that it cannot bring the old value back.
+ * @param <V> - the type of the cached values
+ */
+public class ReadThroughCache<V> {
+	private final IntFunction<V> loader;
+	private final int maxSize;
+	private final long ttlNanos;
+
+	private final LinkedHashMap<Integer, Entry<V>> entries;
+	private long invalidations = 0; // Bumped on every invalidation, to spot racing loads
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long expirations = 0;
+	private long loads = 0;
+	private long loadNanos = 0;
+
+	/**
+	 * Creates a new, empty cache.
+	 * @param loader - fetches the value for an id on a miss; may
+	 * 		return null, in which case nothing is cached
+	 * @param maxSize - the most entries kept at once
+	 * @param ttlMillis - how long an entry stays valid, or 0 for ever
+	 */
+	@SuppressWarnings("serial")
+	public ReadThroughCache(IntFunction<V> loader, final int maxSize, long ttlMillis) {
+		this.loader = loader;
+		this.maxSize = maxSize;
+		this.ttlNanos = ttlMillis * 1000000L;
+		this.entries = new LinkedHashMap<Integer, Entry<V>>(16, 0.75f, true) { // Access-ordered, for LRU
+			protected boolean removeEldestEntry(Map.Entry<Integer, Entry<V>> eldest) {
+				if(size() <= ReadThroughCache.this.maxSize) return false;
+				++evictions;
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Returns the value for the given id, loading
+	 * it if it is not cached (or no longer valid).
+	 * @param id - the id to look up
+	 * @return The value, or null if the loader found none
+	 */
+	public V get(int id) {
+		long seenInvalidations;
+		synchronized(this) {
+			Entry<V> entry = entries.get(id);
+			if(null != entry) {
+				if(0 == ttlNanos || System.nanoTime() - entry.loadedAt < ttlNanos) {
+					++hits;
+					return entry.value;
+				}
+				entries.remove(id);
+				++expirations;
+			}
+			++misses;
+			seenInvalidations = invalidations;
+		}
+
+		// Load without holding the lock, so that one slow load does not stall every other lookup
+		long start = System.nanoTime();
+		V value = loader.apply(id);
+		long took = System.nanoTime() - start;
+
+		synchronized(this) {
+			++loads;
+			loadNanos += took;
+			if(null != value && seenInvalidations == invalidations) {
+				entries.put(id, new Entry<V>(value, System.nanoTime()));
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Stores the given value, replacing whatever was
+	 * cached for the id before.
+	 * @param id - the id of the value
+	 * @param value - the (up to date) value
+	 */
+	public synchronized void put(int id, V value) {
+		++invalidations; // Any load in flight is now older than this value
+		entries.put(id, new Entry<V>(value, System.nanoTime()));
+	}
+
+	/**
+	 * Drops the cached value for the given id, if any.
+	 * @param id - the id whose value changed
+	 */
+	public synchronized void invalidate(int id) {
+		++invalidations;
+		entries.remove(id);
+	}
+
+	/**
+	 * Drops every cached value.
+	 */
+	public synchronized void invalidateAll() {
+		++invalidations;
+		entries.clear();
+	}
+
+	/**
+	 * Returns a snapshot of this cache's size and counters.
+	 * @return A CacheStatistics object
+	 */
+	public synchronized CacheStatistics getStatistics() {
+		return new CacheStatistics(entries.size(), maxSize, hits, misses,
+								   evictions, expirations, loads, loadNanos);
+	}
+
+	private static class Entry<V> {
+		private final V value;
+		private final long loadedAt;
+
+		Entry(V value, long loadedAt) {
+			this.value = value;
+			this.loadedAt = loadedAt;
+		}
+	}
+}
@@ -1,5 +1,9 @@
 package business.controller;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
 import javax.swing.event.TableModelEvent;
 import javax.swing.event.TableModelListener;
 
@@ -8,31 +12,81 @@ import presentation.GenericView;
 import presentation.MainView;
 import presentation.MainView.LabelType;
 
-class ChangeListener<T> implements TableModelListener { // Package-visible
+class ChangeListener<T> implements TableModelListener, WriteBehindQueue.Listener<T> { // Package-visible
 	private AbstractManager<T> man;
 	private GenericView<T> view;
 	private MainView mainView;
 	private LabelType label;
-	
-	public ChangeListener(AbstractManager<T> man, GenericView<T> view, MainView mainView, LabelType label) {
+	private ToIntFunction<T> idOf;
+	private WriteBehindQueue<T> queue; // Null unless the write-behind mode is on
+
+	public ChangeListener(AbstractManager<T> man, GenericView<T> view, MainView mainView, LabelType label,
+			ToIntFunction<T> idOf) {
 		this.man = man;
 		this.view = view;
 		this.mainView = mainView;
 		this.label = label;
+		this.idOf = idOf;
+		this.queue = WriteBehindQueue.isEnabled() ? new WriteBehindQueue<T>(man, idOf, this) : null;
 	}
 
 	public void tableChanged(TableModelEvent e) {
-		// Update the changed element
-		int row = e.getFirstRow(); // Only one row can change at once, so this is okay
-		T elem = view.getDataAt(row);
-		elem = man.update(elem);
-		
-		// Update the table
-		view.setDataAt(row, elem);
+		if(TableModelEvent.UPDATE != e.getType() || e.getFirstRow() != e.getLastRow()
+				|| TableModelEvent.ALL_COLUMNS == e.getColumn()) {
+			return; // Rows were (re)loaded or moved, not edited
+		}
 		
+		// Update the changed element, in the background
+		int row = e.getFirstRow();
+		T elem = view.getDataAt(row);
+		if(null == elem) return; // Not loaded, so it cannot have been edited
+		// Write only the edited cell's field
+		Set<String> changed = Collections.singleton(view.getColumnName(e.getColumn()));
+		if(null != queue) {
+			queue.edit(elem, changed); // Written a little later, along with the edits around it
+			return;
+		}
+
+		man.updateAsync(elem, changed).whenComplete((updated, ex) -> { // Back on the EDT
+			if(null != ex) failed(elem, ex);
+			else written(updated);
+		});
+	}
+
+	/**
+	 * Starts writing the edits held back by the write-behind
+	 * mode, if any, e.g. because the view was closed.
+	 */
+	public void flush() {
+		if(null != queue) queue.flush();
+	}
+
+	/**
+	 * Writes the edits held back by the write-behind mode,
+	 * if any, and waits until they are written.
+	 */
+	public void close() {
+		if(null != queue) queue.close();
+	}
+
+	public void written(T updated) {
+		// Update the table (by id, since the rows may have moved in the meantime),
+		// unless the row was edited again since, and shows a newer version
+		if(null == queue || !queue.isPending(idOf.applyAsInt(updated))) view.updateData(updated);
+
 		// Update the main view, if needed
 		T t = view.getSelectedRowData();
 		if(null == t) mainView.setLabel(null, label);
 		else mainView.setLabel(t.toString(), label);
 	}
+
+	public void failed(T elem, Throwable ex) {
+		// If we got here, the database failed and nothing was changed
+		ErrorDialog.show(ex);
+
+		// Put the row back the way the database has it
+		man.getByIdAsync(idOf.applyAsInt(elem)).whenComplete((stored, ex2) -> {
+			if(null == ex2 && null != stored) written(stored);
+		});
+	}
 }
@@ -3,10 +3,15 @@ package business.controller;
 import java.awt.HeadlessException;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ToIntFunction;
 
 import javax.swing.JOptionPane;
 
+import business.managers.AbstractManager;
 import business.managers.ItemManager;
 import business.managers.OrderItemManager;
 import business.managers.OrderManager;
@@ -16,16 +21,18 @@ import dto.ItemDTO;
 import dto.OrderDTO;
 import dto.OrderItemDTO;
 import dto.UserDTO;
+import metrics.QueryDiagnostics;
 import presentation.CartView;
 import presentation.GenericView;
 import presentation.MainView;
 import presentation.MainView.LabelType;
+import presentation.PageSource;
 
 public class Controller {
 	private ItemManager itemMan    = new ItemManager();
 	private UserManager userMan    = new UserManager();
-	private OrderManager orderMan  = new OrderManager();
-	private OrderItemManager oiMan = new OrderItemManager();
+	private OrderManager orderMan  = new OrderManager(itemMan);
+	private OrderItemManager oiMan = new OrderItemManager(itemMan);
 	
 	private ReceiptWriter writer = new ReceiptWriter();
 	
@@ -41,12 +48,14 @@ public class Controller {
 	 * and the database / logic.
 	 */
 	public Controller() {
-		itemView = new GenericView<ItemDTO>(itemMan.getAll(), ItemDTO.class);
-		userView = new GenericView<UserDTO>(userMan.getAll(), UserDTO.class);
-		orderView = new GenericView<OrderDTO>(orderMan.getAll(), OrderDTO.class);
+		// The views only count their rows up front, and load them as they are scrolled to
+		itemView = new GenericView<ItemDTO>(pagesOf(itemMan, ItemDTO::getId), ItemDTO.class);
+		userView = new GenericView<UserDTO>(pagesOf(userMan, UserDTO::getId), UserDTO.class);
+		orderView = new GenericView<OrderDTO>(pagesOf(orderMan, OrderDTO::getId), OrderDTO.class);
 		mainView = new MainView();
 		
 		addListeners();
+		orderMan.startTotalsCheck(); // Repairs the stored order totals, should they ever drift
 		
 		mainView.setVisible(true);
 	}
@@ -55,9 +64,25 @@ public class Controller {
 	 * Adds the needed listeners to all the non-changing views.
 	 */
 	private void addListeners() {
-		itemView.attachChangedListener(new ChangeListener<ItemDTO>(itemMan, itemView, mainView, LabelType.ITEM));
-		userView.attachChangedListener(new ChangeListener<UserDTO>(userMan, userView, mainView, LabelType.USER));
-		orderView.attachChangedListener(new ChangeListener<OrderDTO>(orderMan, orderView, mainView, LabelType.ORDER));
+		ChangeListener<ItemDTO> itemChanges = new ChangeListener<ItemDTO>(itemMan, itemView, mainView, LabelType.ITEM, ItemDTO::getId);
+		ChangeListener<UserDTO> userChanges = new ChangeListener<UserDTO>(userMan, userView, mainView, LabelType.USER, UserDTO::getId);
+		ChangeListener<OrderDTO> orderChanges = new ChangeListener<OrderDTO>(orderMan, orderView, mainView, LabelType.ORDER, OrderDTO::getId);
+		itemView.attachChangedListener(itemChanges);
+		userView.attachChangedListener(userChanges);
+		orderView.attachChangedListener(orderChanges);
+		
+		// Edits held back by the write-behind mode are written when their view closes,
+		// and all of them before the program exits
+		itemView.attachCloseListener(flushOnClose(itemChanges));
+		userView.attachCloseListener(flushOnClose(userChanges));
+		orderView.attachCloseListener(flushOnClose(orderChanges));
+		mainView.addWindowListener(new WindowAdapter() {
+			public void windowClosing(WindowEvent e) {
+				itemChanges.close();
+				userChanges.close();
+				orderChanges.close();
+			}
+		});
 		
 		itemView.attachSelectionListener(new SelectionListener<ItemDTO>(itemView, mainView, LabelType.ITEM));
 		userView.attachSelectionListener(new SelectionListener<UserDTO>(userView, mainView, LabelType.USER));
@@ -70,15 +95,19 @@ public class Controller {
 		itemView.attachAddListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				ItemDTO i = new ItemDTO(); // Add an empty item that the user customises
-				i = itemMan.insert(i);
-				itemView.addDataRow(i);
+				itemMan.insertAsync(i).whenComplete((inserted, ex) -> {
+					if(null != ex) ErrorDialog.show(ex);
+					else itemView.addDataRow(inserted);
+				});
 			}
 		});
 		userView.attachAddListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				UserDTO u = new UserDTO(); // Add an empty user that the user customises
-				u = userMan.insert(u);
-				userView.addDataRow(u);
+				userMan.insertAsync(u).whenComplete((inserted, ex) -> {
+					if(null != ex) ErrorDialog.show(ex);
+					else userView.addDataRow(inserted);
+				});
 			}
 		});
 		orderView.attachAddListener(new ActionListener() {
@@ -88,8 +117,10 @@ public class Controller {
 					userId = Integer.parseInt(JOptionPane.showInputDialog("Insert the user id for the order"));
 					OrderDTO o = new OrderDTO();
 					o.setUserId(userId);
-					o = orderMan.insert(o);
-					orderView.addDataRow(o);
+					orderMan.insertAsync(o).whenComplete((inserted, ex) -> {
+						if(null != ex) ErrorDialog.show(ex);
+						else orderView.addDataRow(inserted);
+					});
 				} catch (NumberFormatException e1) {
 					; // Wrong format, or user simply clicked cancel; just ignore it
 				} catch (HeadlessException e1) {
@@ -113,17 +144,86 @@ public class Controller {
 					cartView.dispose();
 					cartView = null;
 				}
-				try {
-					OrderDTO selectedOrder = orderView.getSelectedRowData();
-					cartView = new CartView(oiMan.getByOrderId(selectedOrder.getId()),
-											selectedOrder.getId());
+				OrderDTO selectedOrder = orderView.getSelectedRowData();
+				if(null == selectedOrder) return; // If we got here, we couldn't select a good Order; abort
+				
+				oiMan.getByOrderIdAsync(selectedOrder.getId()).whenComplete((entries, ex) -> {
+					if(null != ex) {
+						ErrorDialog.show(ex);
+						return;
+					}
+					if(null != cartView) cartView.dispose(); // Opened again while we were loading
+					cartView = new CartView(entries, selectedOrder.getId());
 					addCartViewListeners();
 					cartView.setVisible(true);
-				} catch (IndexOutOfBoundsException ex) {
-					; // If we got here, it means we couldn't select a good Order
-					// In that case, simply abort and that's it
+				});
+			}
+		});
+	}
+	
+	/**
+	 * Lets a view read the elements of the given manager a page at a time.
+	 * Every read is diagnosed as an operation of its own, just like the
+	 * other calls made off the event dispatch thread.
+	 * @param man - the manager to read through
+	 * @param idOf - gives the id of an element
+	 * @return A PageSource over the manager's elements
+	 */
+	@SuppressWarnings("try") // The diagnostic scopes are only opened to be closed, never read
+	private static <T> PageSource<T> pagesOf(AbstractManager<T> man, ToIntFunction<T> idOf) {
+		String name = man.getClass().getSimpleName();
+		return new PageSource<T>() {
+			public int count() {
+				try (QueryDiagnostics.Scope scope = QueryDiagnostics.begin(name + ".count")) {
+					return man.count();
+				}
+			}
+			
+			public List<T> page(int afterId, int limit) {
+				try (QueryDiagnostics.Scope scope = QueryDiagnostics.begin(name + ".getPage")) {
+					return man.getPage(afterId, limit);
+				}
+			}
+			
+			public List<T> pageBefore(int beforeId, int limit) {
+				try (QueryDiagnostics.Scope scope = QueryDiagnostics.begin(name + ".getPageBefore")) {
+					return man.getPageBefore(beforeId, limit);
+				}
+			}
+			
+			public List<T> pageAt(int offset, int limit) {
+				try (QueryDiagnostics.Scope scope = QueryDiagnostics.begin(name + ".getPageAt")) {
+					return man.getPageAt(offset, limit);
 				}
 			}
+			
+			public int idOf(T t) {
+				return idOf.applyAsInt(t);
+			}
+		};
+	}
+	
+	private static WindowAdapter flushOnClose(ChangeListener<?> changes) {
+		return new WindowAdapter() {
+			public void windowClosing(WindowEvent e) {
+				changes.flush();
+			}
+		};
+	}
+	
+	/**
+	 * Re-reads the given order in the background, then shows
+	 * it in the order view and, if needed, the main view.
+	 * @param orderId - the id of the order that changed
+	 * @return A future completed once the views are up to date
+	 */
+	private CompletableFuture<Void> refreshOrder(int orderId) {
+		return orderMan.getByIdAsync(orderId).thenAccept(order -> {
+			orderView.updateData(order);
+			
+			OrderDTO selectedOrder = orderView.getSelectedRowData();
+			if(null == selectedOrder) mainView.setOrderLabel(null);
+			else mainView.setOrderLabel(selectedOrder.toString());
 		});
 	}
 	
@@ -134,81 +234,74 @@ public class Controller {
 	 */
 	private void addCartViewListeners() {
 		if(null != cartView) {
-			cartView.attachAddListener(new ActionListener() {
+			final CartView cart = cartView; // The listeners outlive cartView being replaced
+			cart.attachAddListener(new ActionListener() {
 				public void actionPerformed(ActionEvent e) {
 					try {
 						ItemDTO selectedItem = itemView.getSelectedRowData();
+						if(null == selectedItem) return; // No Item to add; simply abort
 						int amount = Integer.parseInt(JOptionPane.showInputDialog("How many items?"));
 						
 						OrderItemDTO newCartElem = new OrderItemDTO();
 						newCartElem.setItemId(selectedItem.getId());
-						newCartElem.setOrderId(cartView.getOrderId());
+						newCartElem.setOrderId(cart.getOrderId());
 						newCartElem.setAmount(amount);
 						
-						// De-stock the items that are now allocated to the Order
-						ItemDTO i = itemMan.getById(newCartElem.getItemId());
-						if(i.getStock() < newCartElem.getAmount()) { // Validate, very coarsely
-							throw new IllegalArgumentException("Item " + i.getName() + " is under stocked!");
-						}
-						i.setStock(i.getStock() - newCartElem.getAmount());
-						i = itemMan.update(i);
-						itemView.updateData(i);
-						
-						// Update the system with the new OrderItem
-						newCartElem = oiMan.insert(newCartElem);
-						cartView.addDataRow(newCartElem);
-						
-						// Update the Order
-						orderView.updateData(orderMan.getById(cartView.getOrderId()));
-						
-						// Update the MainView
-						OrderDTO selectedOrder = orderView.getSelectedRowData();
-						if(null == selectedOrder) mainView.setOrderLabel(null);
-						else mainView.setOrderLabel(selectedOrder.toString());
-					} catch (IndexOutOfBoundsException ex) {
-						; // If we got here, it means we couldn't select a good Order
-						// In that case, simply abort and that's it
+						// Reserve the stock and add the OrderItem, all in one go, then
+						// refresh the Item and the Order; all of it in the background
+						oiMan.addToCartAsync(newCartElem)
+							.thenCompose(added -> {
+								cart.addDataRow(added);
+								return itemMan.getByIdAsync(added.getItemId());
+							})
+							.thenCompose(item -> {
+								itemView.updateData(item);
+								return refreshOrder(cart.getOrderId());
+							})
+							.whenComplete((nothing, ex) -> {
+								// If we got here with an error, it means we ran into a validation
+								// error (e.g. not enough stock), or the database failed
+								if(null != ex) ErrorDialog.show(ex);
+							});
 					} catch (NumberFormatException ex) {
 						; // If we got here, the user hit cancel or gave us a
 						// gibberish amount; simply abort
-					} catch (IllegalArgumentException ex) {
-						// If we got here, it means we ran into a validation error
-						JOptionPane.showMessageDialog(null, ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
 					}
 				}
 			});
 			
-			cartView.attachDeleteListener(new ActionListener() {
+			cart.attachDeleteListener(new ActionListener() {
 				public void actionPerformed(ActionEvent e) {
-					OrderItemDTO toDelete = cartView.getSelectedRowData();
-					
-					// Re-stock the items that had been allocated to the Order
-					ItemDTO i = itemMan.getById(toDelete.getItemId());
-					i.setStock(i.getStock() + toDelete.getAmount());
-					i = itemMan.update(i);
-					itemView.updateData(i);
-					
-					// Update the system to account for the removal
-					cartView.deleteDataRow(cartView.getSelectedRow());
-					oiMan.delete(toDelete);
-
-					// Update the Order
-					orderView.updateData(orderMan.getById(cartView.getOrderId()));
+					OrderItemDTO toDelete = cart.getSelectedRowData();
+					if(null == toDelete) return; // Nothing selected, so nothing to delete
 					
-					// Update the MainView
-					OrderDTO selectedOrder = orderView.getSelectedRowData();
-					if(null == selectedOrder) mainView.setOrderLabel(null);
-					else mainView.setOrderLabel(selectedOrder.toString());
+					// Remove the OrderItem and re-stock its items, all in one go,
+					// then refresh the Item and the Order; all of it in the background
+					oiMan.removeFromCartAsync(toDelete)
+						.thenCompose(nothing -> {
+							cart.deleteData(toDelete);
+							return itemMan.getByIdAsync(toDelete.getItemId());
+						})
+						.thenCompose(item -> {
+							itemView.updateData(item);
+							return refreshOrder(cart.getOrderId());
+						})
+						.whenComplete((nothing, ex) -> {
+							if(null != ex) ErrorDialog.show(ex);
+						});
 				}
 			});
 			
-			cartView.attachReceiptListener(new ActionListener() {
+			cart.attachReceiptListener(new ActionListener() {
 				public void actionPerformed(ActionEvent e) {
-					OrderDTO order = orderMan.getById(cartView.getOrderId());
-					String userEmail = (userMan.getById(order.getUserId())).getEmail();
-					List<OrderItemDTO> cartEntries = cartView.getAllData();
+					List<OrderItemDTO> cartEntries = cart.getAllData();
 					
-					writer.writeReceipt(userEmail, order, cartEntries);
+					orderMan.getByIdAsync(cart.getOrderId())
+						.thenCompose(order -> userMan.getByIdAsync(order.getUserId())
+							.thenAccept(user -> writer.writeReceipt(user.getEmail(), order, cartEntries)))
+						.whenComplete((nothing, ex) -> {
+							if(null != ex) ErrorDialog.show(ex);
+						});
 				}
 			});
 		}
@@ -22,14 +22,21 @@ class DeleteListener<T> implements ActionListener {
 	}
 	
 	public void actionPerformed(ActionEvent e) {
-		// Update our view
+		// Update the database in the background, then our view
 		T t = view.getSelectedRowData();
-		view.deleteDataRow(view.getSelectedRow());
-		man.delete(t);
-		
-		// Update the main view
-		t = view.getSelectedRowData();
-		if(null == t) mainView.setLabel(null, label);
-		else mainView.setLabel(t.toString(), label);
+		if(null == t) return; // Nothing selected, so nothing to delete
+		man.deleteAsync(t).whenComplete((nothing, ex) -> { // Back on the EDT
+			if(null != ex) {
+				// If we got here, the database failed and nothing was deleted
+				ErrorDialog.show(ex);
+				return;
+			}
+			view.deleteData(t); // Not by row, since the rows may have moved in the meantime
+			
+			// Update the main view
+			T selected = view.getSelectedRowData();
+			if(null == selected) mainView.setLabel(null, label);
+			else mainView.setLabel(selected.toString(), label);
+		});
 	}
 }
@@ -0,0 +1,25 @@
+package business.controller;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JOptionPane;
+
+class ErrorDialog { // Package-visible
+	private ErrorDialog() {
+		// Static helper; not meant to be instantiated
+	}
+	
+	/**
+	 * Tells the user that an operation failed. Errors that come
+	 * out of an asynchronous operation are unwrapped first, so
+	 * that the user sees what actually went wrong.
+	 * @param e - the error to show
+	 */
+	static void show(Throwable e) {
+		while((e instanceof CompletionException || e instanceof ExecutionException) && null != e.getCause()) {
+			e = e.getCause();
+		}
+		JOptionPane.showMessageDialog(null, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+	}
+}
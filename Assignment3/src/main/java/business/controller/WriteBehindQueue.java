@@ -0,0 +1,294 @@
+package business.controller;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.ToIntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.SwingUtilities;
+
+import business.managers.AbstractManager;
+import metrics.QueryDiagnostics;
+
+/**
+ * Holds back the cell edits of a view for a short while, then writes
+ * them to the database in the background, all at once. Edits of the
+ * same element made in the meantime are merged into a single update
+ * of all the fields they touched, so that e.g. editing a whole column
+ * of prices costs one write per row, off the event dispatch thread.
+ * <br>
+ * The mode is off unless started with <code>-D{@value #PROPERTY}=&lt;ms&gt;</code>
+ * (the length of the window, e.g. 200). Once {@value #MAX_PENDING_PROPERTY}
+ * (256 by default) elements wait, they are written straight away.
+ * <br>
+ * Every queue writes on the same background thread, in the order the
+ * edits were flushed, and has at most one batch being written at a
+ * time. Edits made while it is written wait, merging as usual, and are
+ * written as one batch as soon as it is done; so edits made faster than
+ * they are written hold at most one waiting element per edited row,
+ * rather than piling up batches behind the thread.
+ * <br>
+ * The outcome of every write is handed to the queue's {@link Listener},
+ * on the event dispatch thread. The queue holds copies of the edited
+ * elements, so the rows may be edited again while their earlier edits
+ * are being written.
+ * @param <T> - the type of the elements edited
+ */
+class WriteBehindQueue<T> { // Package-visible
+	private static final Logger LOGGER = Logger.getLogger(WriteBehindQueue.class.getName());
+
+	/**
+	 * The name of the system property giving how long, in
+	 * milliseconds, edits are held back; 0 (the default) turns
+	 * the mode off, so that every edit is written at once.
+	 */
+	public static final String PROPERTY = "warehouse.writeBehind.windowMillis";
+	/**
+	 * The name of the system property giving the most
+	 * elements that may wait to be written at once.
+	 */
+	public static final String MAX_PENDING_PROPERTY = "warehouse.writeBehind.maxPending";
+
+	private static final long WINDOW_MS = Long.getLong(PROPERTY, 0);
+	private static final int MAX_PENDING = Integer.getInteger(MAX_PENDING_PROPERTY, 256);
+	private static final long CLOSE_TIMEOUT_S = 10;
+
+	// One thread for every queue, so that flushes are written in the order they were made
+	private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "write-behind");
+		t.setDaemon(true); // Never keeps the application alive; see close()
+		return t;
+	});
+
+	/**
+	 * Told about the outcome of every write, on the event dispatch thread.
+	 * @param <T> - the type of the elements edited
+	 */
+	interface Listener<T> {
+		/**
+		 * An element was written.
+		 * @param t - the element, as returned by the manager
+		 */
+		void written(T t);
+
+		/**
+		 * An element could not be written; the database still
+		 * holds its old version, which the view should go back to.
+		 * @param t - the element, as it was edited
+		 * @param e - what went wrong
+		 */
+		void failed(T t, Throwable e);
+	}
+
+	private final AbstractManager<T> man;
+	private final ToIntFunction<T> idOf;
+	private final Listener<T> listener;
+	private final long windowMillis;
+	private final int maxPending;
+
+	private Map<Integer, Pending<T>> pending = new LinkedHashMap<Integer, Pending<T>>(); // By id; guarded by this
+	private ScheduledFuture<?> scheduled; // The flush at the end of the current window, if any
+	private CompletableFuture<Void> inFlight; // The batch being written, if any
+	private CompletableFuture<Void> queued; // Completed once the edits waiting behind inFlight are written
+
+	/**
+	 * Tells whether the write-behind mode is on.
+	 * @return True if edits should go through a WriteBehindQueue
+	 */
+	static boolean isEnabled() {
+		return WINDOW_MS > 0;
+	}
+
+	/**
+	 * Creates a queue with the window and size set through
+	 * the system properties.
+	 * @param man - the manager to write the elements through
+	 * @param idOf - gives the id of an element
+	 * @param listener - told about the outcome of every write
+	 */
+	WriteBehindQueue(AbstractManager<T> man, ToIntFunction<T> idOf, Listener<T> listener) {
+		this(man, idOf, listener, WINDOW_MS, MAX_PENDING);
+	}
+
+	/**
+	 * Creates a queue with the given window and size.
+	 * @param man - the manager to write the elements through
+	 * @param idOf - gives the id of an element
+	 * @param listener - told about the outcome of every write
+	 * @param windowMillis - how long edits are held back
+	 * @param maxPending - how many waiting elements are written
+	 * 		without waiting for the end of the window
+	 */
+	WriteBehindQueue(AbstractManager<T> man, ToIntFunction<T> idOf, Listener<T> listener,
+			long windowMillis, int maxPending) {
+		this.man = man;
+		this.idOf = idOf;
+		this.listener = listener;
+		this.windowMillis = windowMillis;
+		this.maxPending = maxPending;
+	}
+
+	/**
+	 * Queues an edit of the given element, to be written at the end
+	 * of the current window (or straight away, if the queue is full),
+	 * but never before the batch being written, if any, is done.
+	 * @param t - the edited element
+	 * @param changedFields - the names of the fields that changed,
+	 * 		or null if the whole element may have changed
+	 */
+	synchronized void edit(T t, Set<String> changedFields) {
+		int id = idOf.applyAsInt(t);
+		Pending<T> p = pending.get(id);
+		if(null == p) {
+			p = new Pending<T>();
+			p.fields = new HashSet<String>();
+			pending.put(id, p);
+		}
+		p.element = copyOf(t); // The latest version; the row itself may be edited again meanwhile
+		if(null == changedFields) p.fields = null; // Write all of it
+		else if(null != p.fields) p.fields.addAll(changedFields);
+
+		if(pending.size() >= maxPending) {
+			flush();
+		} else if(null == scheduled) {
+			scheduled = WRITER.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Tells whether the given element has edits waiting to be
+	 * written, so that the view should keep showing its own version.
+	 * @param id - the id of an element
+	 * @return True if the element was edited since the last flush
+	 */
+	synchronized boolean isPending(int id) {
+		return pending.containsKey(id);
+	}
+
+	/**
+	 * Starts writing every queued edit now, in the background,
+	 * rather than at the end of the window; e.g. when the view
+	 * is closed. If a batch is being written, the edits are written
+	 * right after it instead, along with any made until then.
+	 * @return A future completed once the edits are written
+	 */
+	synchronized Future<?> flush() {
+		if(null != scheduled) {
+			scheduled.cancel(false);
+			scheduled = null;
+		}
+		if(pending.isEmpty()) return (null == inFlight) ? CompletableFuture.completedFuture(null) : inFlight;
+		if(null != inFlight) { // Started by finished(inFlight)
+			if(null == queued) queued = new CompletableFuture<Void>();
+			return queued;
+		}
+		return start(new CompletableFuture<Void>());
+	}
+
+	/**
+	 * Hands every queued edit to the background thread, as one batch.
+	 * The caller holds the lock.
+	 * @param done - completed once the batch is written
+	 * @return The same future
+	 */
+	private Future<?> start(CompletableFuture<Void> done) {
+		Collection<Pending<T>> batch = pending.values();
+		pending = new LinkedHashMap<Integer, Pending<T>>();
+		inFlight = done;
+		WRITER.execute(() -> {
+			try {
+				write(batch);
+			} finally {
+				finished(done);
+			}
+		});
+		return done;
+	}
+
+	/**
+	 * Called once the batch in flight is written; starts the
+	 * edits that waited for it, if they were flushed meanwhile.
+	 * @param done - the future of the batch just written
+	 */
+	private void finished(CompletableFuture<Void> done) {
+		synchronized(this) {
+			inFlight = null;
+			if(null != queued) {
+				start(queued);
+				queued = null;
+			}
+		}
+		done.complete(null);
+	}
+
+	/**
+	 * Writes every queued edit, and waits (for a while) until they
+	 * are written. Meant for when the application exits, since the
+	 * background thread does not keep it alive.
+	 */
+	void close() {
+		try {
+			flush().get(CLOSE_TIMEOUT_S, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | TimeoutException e) {
+			LOGGER.log(Level.WARNING, "WriteBehindQueue: edits may have been lost, " + e);
+		}
+	}
+
+	@SuppressWarnings("try") // The diagnostic scope is only opened to be closed, never read
+	private void write(Collection<Pending<T>> batch) {
+		try (QueryDiagnostics.Scope scope = QueryDiagnostics.begin(man.getClass().getSimpleName() + ".writeBehind")) {
+			for(Pending<T> p : batch) {
+				try {
+					T written = (null == p.fields) ? man.update(p.element) : man.update(p.element, p.fields);
+					SwingUtilities.invokeLater(() -> listener.written(written));
+				} catch (RuntimeException e) { // The others may still go through
+					SwingUtilities.invokeLater(() -> listener.failed(p.element, e));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Makes a shallow copy of the given element, field by field, so
+	 * that the background thread never reads the row the table shows.
+	 */
+	private static <T> T copyOf(T t) {
+		try {
+			@SuppressWarnings("unchecked")
+			Class<T> type = (Class<T>) t.getClass();
+			T copy = type.getDeclaredConstructor().newInstance();
+			for(Field f : type.getDeclaredFields()) {
+				if(Modifier.isStatic(f.getModifiers())) continue;
+				f.setAccessible(true);
+				f.set(copy, f.get(t));
+			}
+			return copy;
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("WriteBehindQueue: cannot copy " + t.getClass().getName(), e);
+		}
+	}
+
+	/**
+	 * The merged edits of one element.
+	 */
+	private static class Pending<T> {
+		private T element;
+		private Set<String> fields; // Null for all of them
+	}
+}
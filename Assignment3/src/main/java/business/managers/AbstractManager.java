@@ -1,6 +1,8 @@
 package business.managers;
 
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public interface AbstractManager<T> {
 	/**
@@ -18,6 +20,45 @@ public interface AbstractManager<T> {
 	 */
 	public T getById(int id);
 	
+	/**
+	 * Returns the number of elements in the
+	 * database, without reading any of them.
+	 * @return The element count
+	 */
+	public int count();
+	
+	/**
+	 * Returns at most limit elements whose id comes
+	 * after afterId, in increasing order of id. Use
+	 * an afterId of 0 for the first page, then the
+	 * id of the last element of the previous page.
+	 * @param afterId - the id right before the page
+	 * @param limit - the most elements to return
+	 * @return A list of easy-to-display elements
+	 */
+	public List<T> getPage(int afterId, int limit);
+	
+	/**
+	 * Returns at most limit elements whose id comes
+	 * before beforeId, in increasing order of id. Use
+	 * {@link Integer#MAX_VALUE} for the last page.
+	 * @param beforeId - the id right after the page
+	 * @param limit - the most elements to return
+	 * @return A list of easy-to-display elements
+	 */
+	public List<T> getPageBefore(int beforeId, int limit);
+	
+	/**
+	 * Returns at most limit elements, starting with the
+	 * one at the given position in increasing order of id.
+	 * Meant for jumping far into the elements; prefer
+	 * {@link #getPage(int, int)} for the next page.
+	 * @param offset - the number of elements to skip
+	 * @param limit - the most elements to return
+	 * @return A list of easy-to-display elements
+	 */
+	public List<T> getPageAt(int offset, int limit);
+	
 	/**
 	 * Updates the database with the data
 	 * contained in the received element.
@@ -29,6 +70,21 @@ public interface AbstractManager<T> {
 	 */
 	public T update(T t);
 	
+	/**
+	 * Updates the database with only the given fields of the received
+	 * element, e.g. the single cell the user just edited, so that the
+	 * other fields are neither written nor overwritten. If no field
+	 * changed, the database is not touched. Managers that cannot write
+	 * single fields fall back on {@link #update(Object)}.
+	 * @param t - the element to update
+	 * @param changedFields - the names of the fields that changed
+	 * @return The received element (possibly modified)
+	 * @throws dao.DataAccessException if the database fails
+	 */
+	default T update(T t, Set<String> changedFields) {
+		return changedFields.isEmpty() ? t : update(t);
+	}
+	
 	/**
 	 * Deletes the entries in the database
 	 * that correspond to the received element.
@@ -45,4 +101,86 @@ public interface AbstractManager<T> {
 	 * @return The received element (probably modified)
 	 */
 	public T insert(T t);
+	
+	/*
+	 * Asynchronous versions of the operations above. Each runs the
+	 * operation in the background and returns straight away; the
+	 * returned future is completed on the Swing event dispatch thread,
+	 * with either the operation's result or the exception it threw,
+	 * so that the views never wait for the database.
+	 */
+	
+	/**
+	 * Runs {@link #getAll()} in the background.
+	 * @return A future of the list of elements
+	 */
+	default CompletableFuture<List<T>> getAllAsync() {
+		return ManagerExecutor.supplyAsync(getClass().getSimpleName() + ".getAll", this::getAll);
+	}
+	
+	/**
+	 * Runs {@link #getById(int)} in the background.
+	 * @param id - the id to search by
+	 * @return A future of the element
+	 */
+	default CompletableFuture<T> getByIdAsync(int id) {
+		return ManagerExecutor.supplyAsync(getClass().getSimpleName() + ".getById", () -> getById(id));
+	}
+	
+	/**
+	 * Runs {@link #getPage(int, int)} in the background.
+	 * @param afterId - the id right before the page
+	 * @param limit - the most elements to return
+	 * @return A future of the list of elements
+	 */
+	default CompletableFuture<List<T>> getPageAsync(int afterId, int limit) {
+		return ManagerExecutor.supplyAsync(getClass().getSimpleName() + ".getPage", () -> getPage(afterId, limit));
+	}
+	
+	/**
+	 * Runs {@link #getPageBefore(int, int)} in the background.
+	 * @param beforeId - the id right after the page
+	 * @param limit - the most elements to return
+	 * @return A future of the list of elements
+	 */
+	default CompletableFuture<List<T>> getPageBeforeAsync(int beforeId, int limit) {
+		return ManagerExecutor.supplyAsync(getClass().getSimpleName() + ".getPageBefore", () -> getPageBefore(beforeId, limit));
+	}
+	
+	/**
+	 * Runs {@link #update(Object)} in the background.
+	 * @param t - the element to update
+	 * @return A future of the updated element
+	 */
+	default CompletableFuture<T> updateAsync(T t) {
+		return ManagerExecutor.supplyAsync(getClass().getSimpleName() + ".update", () -> update(t));
+	}
+	
+	/**
+	 * Runs {@link #update(Object, Set)} in the background.
+	 * @param t - the element to update
+	 * @param changedFields - the names of the fields that changed
+	 * @return A future of the updated element
+	 */
+	default CompletableFuture<T> updateAsync(T t, Set<String> changedFields) {
+		return ManagerExecutor.supplyAsync(getClass().getSimpleName() + ".update", () -> update(t, changedFields));
+	}
+	
+	/**
+	 * Runs {@link #delete(Object)} in the background.
+	 * @param t - the element to delete
+	 * @return A future completed once the element is deleted
+	 */
+	default CompletableFuture<Void> deleteAsync(T t) {
+		return ManagerExecutor.runAsync(getClass().getSimpleName() + ".delete", () -> delete(t));
+	}
+	
+	/**
+	 * Runs {@link #insert(Object)} in the background.
+	 * @param t - the element to insert
+	 * @return A future of the inserted element
+	 */
+	default CompletableFuture<T> insertAsync(T t) {
+		return ManagerExecutor.supplyAsync(getClass().getSimpleName() + ".insert", () -> insert(t));
+	}
 }
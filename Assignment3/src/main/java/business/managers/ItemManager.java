@@ -2,43 +2,170 @@ package business.managers;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
+import business.cache.CacheStatistics;
+import business.cache.ReadThroughCache;
 import dao.ItemDAO;
+import dao.OrderDAO;
+import dao.Transaction;
 import dto.ItemDTO;
 import model.Item;
 
 public class ItemManager implements AbstractManager<ItemDTO> {
+	// Items are read far more often than they change, so single-item reads go through a cache
+	private static final int CACHE_SIZE = 1024;
+	private static final long CACHE_TTL_MS = 5 * 60 * 1000;
+	
 	private ItemDAO dao = new ItemDAO();
+	private OrderDAO orderDao = new OrderDAO(); // Order totals depend on Item prices
+	private ReadThroughCache<Item> cache = new ReadThroughCache<Item>(dao::findById, CACHE_SIZE, CACHE_TTL_MS);
 	
 	public List<ItemDTO> getAll() {
-		List<Item> items = dao.findAll();
-		List<ItemDTO> dtos = new ArrayList<ItemDTO>();
-		
-		for(Item i : items) {
-			dtos.add(elemToDto(i));
-		}
-		
-		return dtos;
+		return elemsToDtos(dao.findAll());
 	}
 	
 	public ItemDTO getById(int id) {
-		return elemToDto(dao.findById(id));
+		return elemToDto(cache.get(id)); // The DTO is a copy, so the cached Item stays untouched
+	}
+	
+	public int count() {
+		return dao.count();
+	}
+	
+	public List<ItemDTO> getPage(int afterId, int limit) {
+		return elemsToDtos(dao.findPage(afterId, limit));
+	}
+	
+	public List<ItemDTO> getPageBefore(int beforeId, int limit) {
+		return elemsToDtos(dao.findPageBefore(beforeId, limit));
+	}
+	
+	public List<ItemDTO> getPageAt(int offset, int limit) {
+		return elemsToDtos(dao.findPageAt(offset, limit));
 	}
 
+	/**
+	 * Updates an Item. If its price changed, the totals of the orders
+	 * containing it are rebuilt in the same transaction.
+	 * @throws dao.DataAccessException if the database fails
+	 */
 	public ItemDTO update(ItemDTO dto) {
 		Item i = dtoToElem(dto);
+		try {
+			Transaction.execute(tx -> {
+				Item old = dao.findById(tx, i.getId());
+				dao.update(tx, i);
+				if(null != old && !samePrice(old, i)) {
+					orderDao.rebuildTotalsForItem(tx, i.getId());
+				}
+				return null;
+			});
+		} finally {
+			cache.invalidate(i.getId()); // Whatever happened, re-read next time
+		}
 		
-		return elemToDto(dao.update(i));
+		return elemToDto(i);
+	}
+	
+	/**
+	 * Updates only the changed fields of an Item, so that e.g. renaming
+	 * an Item cannot undo a concurrent change of its stock. The totals
+	 * of the orders containing it are only looked at if the price is
+	 * among the changed fields.
+	 * @throws dao.DataAccessException if the database fails
+	 */
+	public ItemDTO update(ItemDTO dto, Set<String> changedFields) {
+		if(changedFields.isEmpty()) return dto; // Nothing to write
+		Item i = dtoToElem(dto);
+		boolean priceChanged = changedFields.contains("price");
+		try {
+			Transaction.execute(tx -> {
+				Item old = priceChanged ? dao.findById(tx, i.getId()) : null;
+				dao.update(tx, i, changedFields); // The DTO's fields are named after the Item's columns
+				if(null != old && !samePrice(old, i)) {
+					orderDao.rebuildTotalsForItem(tx, i.getId());
+				}
+				return null;
+			});
+		} finally {
+			cache.invalidate(i.getId());
+		}
+		
+		return elemToDto(i);
 	}
 
+	/**
+	 * Deletes an Item, and rebuilds the totals of the orders
+	 * containing it, in a single transaction.
+	 * @throws dao.DataAccessException if the database fails
+	 */
 	public void delete(ItemDTO dto) {
-		dao.delete(dtoToElem(dto));
+		Item i = dtoToElem(dto);
+		try {
+			Transaction.execute(tx -> {
+				if(dao.delete(tx, i)) {
+					orderDao.rebuildTotalsForItem(tx, i.getId());
+				}
+				return null;
+			});
+		} finally {
+			cache.invalidate(dto.getId());
+		}
 	}
 	
 	public ItemDTO insert(ItemDTO dto) {
 		Item i = dtoToElem(dto);
+		i = dao.insert(i);
+		
+		ItemDTO inserted = elemToDto(i); // Copy before caching, so the cached Item stays private
+		if(0 != i.getId()) cache.put(i.getId(), i); // An id of 0 means the insert failed
+		return inserted;
+	}
+	
+	/**
+	 * Drops the cached copy of the Item with the given id, if
+	 * any. Anything that changes Items without going through
+	 * this manager must call this so that readers see the change.
+	 * @param id - the id of the Item that changed
+	 */
+	public void invalidate(int id) {
+		cache.invalidate(id);
+	}
+	
+	/**
+	 * Returns the current size and counters (hit ratio,
+	 * evictions, load latency) of the Item cache.
+	 * @return A CacheStatistics object
+	 */
+	public CacheStatistics getCacheStatistics() {
+		return cache.getStatistics();
+	}
+	
+	/**
+	 * Tells whether two versions of an Item have the same price.
+	 * @param a - one version of the Item
+	 * @param b - the other version of the Item
+	 * @return True if the prices are equal (in value, not in scale)
+	 */
+	private boolean samePrice(Item a, Item b) {
+		if(null == a.getPrice() || null == b.getPrice()) return a.getPrice() == b.getPrice();
+		return 0 == a.getPrice().compareTo(b.getPrice());
+	}
+	
+	/**
+	 * Converts a list of elements to a list of DTOs.
+	 * @param items - the Item objects to convert
+	 * @return A list of ItemDTO objects
+	 */
+	private List<ItemDTO> elemsToDtos(List<Item> items) {
+		List<ItemDTO> dtos = new ArrayList<ItemDTO>();
+		
+		for(Item i : items) {
+			dtos.add(elemToDto(i));
+		}
 		
-		return elemToDto(dao.insert(i));
+		return dtos;
 	}
 	
 	/**
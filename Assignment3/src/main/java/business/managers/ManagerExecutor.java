@@ -0,0 +1,92 @@
+package business.managers;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.SwingUtilities;
+
+import metrics.QueryDiagnostics;
+
+/**
+ * Runs the managers' asynchronous operations away from the Swing event
+ * dispatch thread, then hands their results (or errors) back to it.
+ * Operations run on virtual threads when the JVM has them (Java 21+),
+ * and on a small pool of daemon threads otherwise.
+ */
+final class ManagerExecutor { // Package-visible
+	private static final Logger LOGGER = Logger.getLogger(ManagerExecutor.class.getName());
+
+	// Without virtual threads, there is no point in more workers than pooled connections
+	private static final int FALLBACK_POOL_SIZE = 10;
+
+	private static final ExecutorService EXECUTOR = createExecutor();
+
+	private ManagerExecutor() {
+		// Static helper; not meant to be instantiated
+	}
+
+	/**
+	 * Runs the given work in the background. The returned future is
+	 * completed on the event dispatch thread, so any stage attached to
+	 * it may safely touch the views. The work is one logical operation
+	 * for {@link QueryDiagnostics}.
+	 * @param operation - the name of the operation, e.g. "OrderManager.getAll"
+	 * @param work - the (blocking) work to do
+	 * @return A future of the work's result
+	 */
+	@SuppressWarnings("try") // The diagnostic scope is only opened to be closed, never read
+	static <R> CompletableFuture<R> supplyAsync(String operation, Supplier<R> work) {
+		CompletableFuture<R> result = new CompletableFuture<R>();
+		EXECUTOR.execute(() -> {
+			try {
+				R value;
+				try (QueryDiagnostics.Scope scope = QueryDiagnostics.begin(operation)) {
+					value = work.get();
+				}
+				SwingUtilities.invokeLater(() -> result.complete(value));
+			} catch (Throwable e) {
+				SwingUtilities.invokeLater(() -> result.completeExceptionally(e));
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Runs the given work in the background, as per
+	 * {@link #supplyAsync(String, Supplier)}.
+	 * @param operation - the name of the operation, e.g. "OrderManager.delete"
+	 * @param work - the (blocking) work to do
+	 * @return A future completed once the work is done
+	 */
+	static CompletableFuture<Void> runAsync(String operation, Runnable work) {
+		return supplyAsync(operation, () -> {
+			work.run();
+			return null;
+		});
+	}
+
+	private static ExecutorService createExecutor() {
+		try {
+			// Looked up by name, so that we still build and run on older Java versions
+			Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) virtual.invoke(null);
+		} catch (NoSuchMethodException e) {
+			; // No virtual threads on this JVM; use a plain pool instead
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			LOGGER.log(Level.INFO, "ManagerExecutor: virtual threads unavailable, " + e);
+		}
+
+		AtomicInteger count = new AtomicInteger();
+		return Executors.newFixedThreadPool(FALLBACK_POOL_SIZE, r -> {
+			Thread t = new Thread(r, "manager-worker-" + count.incrementAndGet());
+			t.setDaemon(true); // Never keeps the application alive
+			return t;
+		});
+	}
+}
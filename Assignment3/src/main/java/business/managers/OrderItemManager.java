@@ -3,59 +3,223 @@ package business.managers;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import dao.ItemDAO;
+import dao.OrderDAO;
 import dao.OrderItemDAO;
+import dao.Projection;
+import dao.Transaction;
 import dto.OrderItemDTO;
 import model.Item;
 import model.OrderItem;
+import model.OrderItemLine;
 
 public class OrderItemManager implements AbstractManager<OrderItemDTO> {
 	private OrderItemDAO dao = new OrderItemDAO();
 	private ItemDAO iDao = new ItemDAO();
+	private final Projection<Item> labels = iDao.projection("name", "price"); // All an entry shows of its Item
+	private OrderDAO orderDao = new OrderDAO(); // Its totals change along with its lines
+	private final ItemManager itemMan; // Told about stock changes, so that its cache stays fresh
+	
+	public OrderItemManager() {
+		this(new ItemManager());
+	}
+	
+	/**
+	 * Creates a manager that shares the given ItemManager,
+	 * so that the stock changes made by the cart operations
+	 * are seen by everyone reading Items through it.
+	 * @param itemMan - the ItemManager to keep up to date
+	 */
+	public OrderItemManager(ItemManager itemMan) {
+		this.itemMan = itemMan;
+	}
 
 	public List<OrderItemDTO> getAll() {
-		List<OrderItem> ois = dao.findAll();
-		List<OrderItemDTO> dtos = new ArrayList<OrderItemDTO>();
-		
-		for(OrderItem oi : ois) {
-			dtos.add(elemToDto(oi));
-		}
-		
-		return dtos;
+		return linesToDtos(dao.findAllLines());
 	}
 	
 	public OrderItemDTO getById(int id) {
-		return elemToDto(dao.findById(id));
+		return lineToDto(dao.findLineById(id));
+	}
+	
+	public int count() {
+		return dao.count();
+	}
+	
+	public List<OrderItemDTO> getPage(int afterId, int limit) {
+		return linesToDtos(dao.findLinePage(afterId, limit));
+	}
+	
+	public List<OrderItemDTO> getPageBefore(int beforeId, int limit) {
+		return linesToDtos(dao.findLinePageBefore(beforeId, limit));
+	}
+	
+	public List<OrderItemDTO> getPageAt(int offset, int limit) {
+		return linesToDtos(dao.findLinePageAt(offset, limit));
 	}
 	
+	/**
+	 * Returns all the entries of the given order, each
+	 * read together with its Item in a single query.
+	 * @param id - the id of the order
+	 * @return A list of easy-to-display elements
+	 */
 	public List<OrderItemDTO> getByOrderId(int id) {
-		List<OrderItem> ois = dao.findByOrderId(id);
-		List<OrderItemDTO> dtos = new ArrayList<OrderItemDTO>();
-		
-		for(OrderItem oi : ois) {
-			dtos.add(elemToDto(oi));
-		}
-		
-		return dtos;
+		return linesToDtos(dao.findLinesByOrderId(id));
 	}
 
+	/**
+	 * Runs {@link #getByOrderId(int)} in the background, as
+	 * per the other asynchronous operations.
+	 * @param id - the id of the order
+	 * @return A future of the list of elements
+	 */
+	public CompletableFuture<List<OrderItemDTO>> getByOrderIdAsync(int id) {
+		return ManagerExecutor.supplyAsync("OrderItemManager.getByOrderId", () -> getByOrderId(id));
+	}
+
+	/**
+	 * Updates an entry, and the totals of the order(s) it
+	 * belongs to, in a single transaction.
+	 * @throws dao.DataAccessException if the database fails
+	 */
 	public OrderItemDTO update(OrderItemDTO dto) {
 		OrderItem oi = dtoToElem(dto);
 		
-		return elemToDto(dao.update(oi));
+		Transaction.execute(tx -> {
+			OrderItem old = dao.findById(tx, oi.getId());
+			if(null == old) return null; // Nothing to update
+			dao.update(tx, oi);
+			orderDao.addToTotals(tx, old.getOrder_id(), old.getItem_id(), -old.getAmount());
+			orderDao.addToTotals(tx, oi.getOrder_id(), oi.getItem_id(), oi.getAmount());
+			return null;
+		});
+		return elemToDto(oi);
 	}
 
+	/**
+	 * Deletes an entry, and takes it out of its order's
+	 * totals, in a single transaction.
+	 * @throws dao.DataAccessException if the database fails
+	 */
 	public void delete(OrderItemDTO dto) {
-		dao.delete(dtoToElem(dto));
+		Transaction.execute(tx -> {
+			OrderItem old = dao.findById(tx, dto.getId());
+			if(null != old && dao.delete(tx, old)) {
+				orderDao.addToTotals(tx, old.getOrder_id(), old.getItem_id(), -old.getAmount());
+			}
+			return null;
+		});
 	}
 
+	/**
+	 * Inserts an entry, and adds it to its order's
+	 * totals, in a single transaction.
+	 * @throws dao.DataAccessException if the database fails
+	 */
 	public OrderItemDTO insert(OrderItemDTO dto) {
 		OrderItem oi = dtoToElem(dto);
 		
-		return elemToDto(dao.insert(oi));
+		Transaction.execute(tx -> {
+			dao.insert(tx, oi);
+			orderDao.addToTotals(tx, oi.getOrder_id(), oi.getItem_id(), oi.getAmount());
+			return null;
+		});
+		return elemToDto(oi);
 	}
 
+	/**
+	 * Adds an entry to an order's cart, taking its amount out of the
+	 * Item's stock and adding it to the order's totals. All of this
+	 * happens in a single transaction, and the stock
+	 * is only taken if there is enough of it, so that concurrent carts
+	 * can neither oversell an Item nor overwrite each other's changes.
+	 * @param dto - the entry to add
+	 * @return The added entry, with its new id
+	 * @throws IllegalArgumentException if the amount is not positive,
+	 * 		   or the Item does not exist or have enough stock
+	 * @throws dao.DataAccessException if the database fails
+	 */
+	public OrderItemDTO addToCart(OrderItemDTO dto) {
+		OrderItem oi = dtoToElem(dto);
+		if(oi.getAmount() <= 0) {
+			throw new IllegalArgumentException("The amount must be positive!");
+		}
+		
+		Transaction.execute(tx -> {
+			if(!iDao.decrementStock(tx, oi.getItem_id(), oi.getAmount())) {
+				// Nothing was written; read the Item on the same connection, to say why
+				Item i = iDao.findById(tx, oi.getItem_id());
+				throw new IllegalArgumentException(null == i ? "Item " + oi.getItem_id() + " does not exist!"
+															 : "Item " + i.getName() + " is under stocked!");
+			}
+			dao.insert(tx, oi);
+			orderDao.addToTotals(tx, oi.getOrder_id(), oi.getItem_id(), oi.getAmount());
+			return null;
+		});
+		itemMan.invalidate(oi.getItem_id());
+		
+		return elemToDto(oi);
+	}
+	
+	/**
+	 * Runs {@link #addToCart(OrderItemDTO)} in the background, as
+	 * per the other asynchronous operations.
+	 * @param dto - the entry to add
+	 * @return A future of the added entry
+	 */
+	public CompletableFuture<OrderItemDTO> addToCartAsync(OrderItemDTO dto) {
+		return ManagerExecutor.supplyAsync("OrderItemManager.addToCart", () -> addToCart(dto));
+	}
+	
+	/**
+	 * Removes an entry from an order's cart, putting its amount back
+	 * into the Item's stock and taking it out of the order's totals,
+	 * in a single transaction. Removing an entry that is already
+	 * gone changes nothing.
+	 * @param dto - the entry to remove
+	 * @throws dao.DataAccessException if the database fails
+	 */
+	public void removeFromCart(OrderItemDTO dto) {
+		Transaction.execute(tx -> {
+			// Go by the entry as it is in the database, and only if it is still there
+			OrderItem old = dao.findById(tx, dto.getId());
+			if(null != old && dao.delete(tx, old)) {
+				iDao.incrementStock(tx, old.getItem_id(), old.getAmount());
+				orderDao.addToTotals(tx, old.getOrder_id(), old.getItem_id(), -old.getAmount());
+			}
+			return null;
+		});
+		itemMan.invalidate(dto.getItemId());
+	}
+
+	/**
+	 * Runs {@link #removeFromCart(OrderItemDTO)} in the background,
+	 * as per the other asynchronous operations.
+	 * @param dto - the entry to remove
+	 * @return A future completed once the entry is removed
+	 */
+	public CompletableFuture<Void> removeFromCartAsync(OrderItemDTO dto) {
+		return ManagerExecutor.runAsync("OrderItemManager.removeFromCart", () -> removeFromCart(dto));
+	}
+
+	/**
+	 * Converts a list of joined lines to a list of DTOs.
+	 * @param lines - the OrderItemLine objects to convert
+	 * @return A list of OrderItemDTO objects
+	 */
+	private List<OrderItemDTO> linesToDtos(List<OrderItemLine> lines) {
+		List<OrderItemDTO> dtos = new ArrayList<OrderItemDTO>();
+		
+		for(OrderItemLine l : lines) {
+			dtos.add(lineToDto(l));
+		}
+		
+		return dtos;
+	}
+	
 	/**
 	 * Converts a DTO to an element.
 	 * @param dto - the OrderItemDTO to convert
@@ -84,10 +248,31 @@ public class OrderItemManager implements AbstractManager<OrderItemDTO> {
 		dto.setAmount(oi.getAmount());
 		
 		// Computed
-		Item i = iDao.findById(oi.getItem_id());
-		dto.setItemName(i.getName());
-		dto.setSubtotal(i.getPrice()
-					    .multiply(new BigDecimal(oi.getAmount())));
+		Item i = iDao.findById(oi.getItem_id(), labels);
+		dto.setItemName(null == i ? null : i.getName());
+		dto.setSubtotal(null == i || null == i.getPrice() ? null // The Item is gone
+					    : i.getPrice().multiply(new BigDecimal(oi.getAmount())));
+		
+		return dto;
+	}
+	
+	/**
+	 * Converts a line, already joined with its Item, to a DTO.
+	 * @param l - the OrderItemLine to convert
+	 * @return An OrderItemDTO with the relevant data
+	 */
+	private OrderItemDTO lineToDto(OrderItemLine l) {
+		OrderItemDTO dto = new OrderItemDTO();
+		// Transmitted
+		dto.setId(l.getId());
+		dto.setItemId(l.getItem_id());
+		dto.setOrderId(l.getOrder_id());
+		dto.setAmount(l.getAmount());
+		
+		// Computed (from the joined Item)
+		dto.setItemName(l.getItemName());
+		dto.setSubtotal(null == l.getPrice() ? null // The Item is gone
+					    : l.getPrice().multiply(new BigDecimal(l.getAmount())));
 		
 		return dto;
 	}
@@ -3,38 +3,94 @@ package business.managers;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import dao.ItemDAO;
 import dao.OrderDAO;
 import dao.OrderItemDAO;
+import dao.Projection;
+import dao.Transaction;
 import dto.OrderDTO;
+import dto.OrderItemDTO;
+import model.Item;
 import model.Order;
 import model.OrderItem;
+import model.OrderSummary;
 
 public class OrderManager implements AbstractManager<OrderDTO> {
+	private static final Logger LOGGER = Logger.getLogger(OrderManager.class.getName());
+	
+	/**
+	 * How often the stored order totals are checked against the
+	 * orders' lines by {@link #startTotalsCheck()}, in milliseconds.
+	 */
+	public static final long DEFAULT_TOTALS_CHECK_PERIOD_MS = 10 * 60 * 1000;
+	private static final int TOTALS_CHECK_PAGE_SIZE = 500;
+	
 	private OrderDAO dao = new OrderDAO();
 	private OrderItemDAO oiDao = new OrderItemDAO();
 	private ItemDAO iDao = new ItemDAO();
+	private final Projection<Order> totals = dao.projection("noOfItems", "totalPrice");
+	private final ItemManager itemMan; // Told about stock changes, so that its cache stays fresh
+	private ScheduledExecutorService totalsChecker = null;
+	
+	public OrderManager() {
+		this(new ItemManager());
+	}
+	
+	/**
+	 * Creates a manager that shares the given ItemManager,
+	 * so that the stock taken by {@link #placeOrder(int, List)}
+	 * is seen by everyone reading Items through it.
+	 * @param itemMan - the ItemManager to keep up to date
+	 */
+	public OrderManager(ItemManager itemMan) {
+		this.itemMan = itemMan;
+	}
 
 	public List<OrderDTO> getAll() {
-		List<Order> orders = dao.findAll();
-		List<OrderDTO> dtos = new ArrayList<OrderDTO>();
-		
-		for(Order o : orders) {
-			dtos.add(elemToDto(o));
-		}
-		
-		return dtos;
+		return elemsToDtos(dao.findAll());
 	}
 	
 	public OrderDTO getById(int id) {
-		return elemToDto(dao.findById(id));
+		return elemToDto(dao.findById(id)); // The totals are stored with the order, so no aggregating needed
+	}
+	
+	public int count() {
+		return dao.count();
+	}
+	
+	public List<OrderDTO> getPage(int afterId, int limit) {
+		return elemsToDtos(dao.findPage(afterId, limit));
+	}
+	
+	public List<OrderDTO> getPageBefore(int beforeId, int limit) {
+		return elemsToDtos(dao.findPageBefore(beforeId, limit));
+	}
+	
+	public List<OrderDTO> getPageAt(int offset, int limit) {
+		return elemsToDtos(dao.findPageAt(offset, limit));
 	}
 
 	public OrderDTO update(OrderDTO dto) {
 		Order o = dtoToElem(dto);
+		dao.updateUser(o); // The totals are not ours to set; only the user can change
 		
-		return elemToDto(dao.update(o));
+		return getById(o.getId()); // Re-read the totals along with the order
+	}
+	
+	public OrderDTO update(OrderDTO dto, Set<String> changedFields) {
+		if(changedFields.isEmpty()) return dto;
+		if(!changedFields.contains("userId")) return getById(dto.getId()); // Nothing of ours to write; undo the edit
+		return update(dto);
 	}
 
 	public void delete(OrderDTO dto) {
@@ -47,6 +103,187 @@ public class OrderManager implements AbstractManager<OrderDTO> {
 		return elemToDto(dao.insert(o));
 	}
 	
+	/**
+	 * Places a whole order at once: creates the Order, takes the stock
+	 * for all of its lines and inserts all of its OrderItems, in a single
+	 * transaction. The stock and the OrderItems are sent in JDBC batches,
+	 * so the cost barely grows with the number of lines. If any Item does
+	 * not have enough stock, nothing at all is changed.
+	 * @param userId - the id of the User placing the order
+	 * @param lines - the entries of the order; only their item id and
+	 * 		  amount are used
+	 * @return The new order, with its number of items and total price
+	 * @throws IllegalArgumentException if an amount is not positive,
+	 * 		   or an Item does not exist or have enough stock
+	 * @throws dao.DataAccessException if the database fails
+	 */
+	public OrderDTO placeOrder(int userId, List<OrderItemDTO> lines) {
+		// Add up the amounts per Item, in order of id, so that concurrent
+		// orders always lock their Items in the same order (no deadlocks)
+		Map<Integer, Integer> amountsByItem = new TreeMap<Integer, Integer>();
+		for(OrderItemDTO line : lines) {
+			if(line.getAmount() <= 0) {
+				throw new IllegalArgumentException("The amount must be positive!");
+			}
+			amountsByItem.merge(line.getItemId(), line.getAmount(), Integer::sum);
+		}
+		final int[] itemIds = new int[amountsByItem.size()];
+		final int[] amounts = new int[amountsByItem.size()];
+		int index = 0;
+		for(Map.Entry<Integer, Integer> entry : amountsByItem.entrySet()) {
+			itemIds[index] = entry.getKey();
+			amounts[index] = entry.getValue();
+			++index;
+		}
+		
+		Order o = new Order();
+		o.setUser_id(userId);
+		Transaction.execute(tx -> {
+			dao.insert(tx, o);
+			
+			int failed = iDao.decrementStock(tx, itemIds, amounts);
+			if(-1 != failed) { // Thrown from inside, so that the Order is rolled back too
+				Item i = iDao.findById(tx, itemIds[failed]); // On the same connection
+				throw new IllegalArgumentException(null == i ? "Item " + itemIds[failed] + " does not exist!"
+															 : "Item " + i.getName() + " is under stocked!");
+			}
+			
+			List<OrderItem> ois = new ArrayList<OrderItem>();
+			for(OrderItemDTO line : lines) {
+				OrderItem oi = new OrderItem();
+				oi.setOrder_id(o.getId());
+				oi.setItem_id(line.getItemId());
+				oi.setAmount(line.getAmount());
+				ois.add(oi);
+			}
+			oiDao.insertAll(tx, ois);
+			dao.rebuildTotals(tx, o.getId());
+			return null;
+		});
+		for(int itemId : itemIds) {
+			itemMan.invalidate(itemId);
+		}
+		
+		return getById(o.getId());
+	}
+	
+	/**
+	 * Runs {@link #placeOrder(int, List)} in the background, as
+	 * per the other asynchronous operations.
+	 * @param userId - the id of the User placing the order
+	 * @param lines - the entries of the order
+	 * @return A future of the new order
+	 */
+	public CompletableFuture<OrderDTO> placeOrderAsync(int userId, List<OrderItemDTO> lines) {
+		return ManagerExecutor.supplyAsync("OrderManager.placeOrder", () -> placeOrder(userId, lines));
+	}
+	
+	/**
+	 * Checks the stored totals of every order against the totals worked
+	 * out from the order's lines, and rebuilds those that have drifted
+	 * (e.g. because the lines were changed without going through the
+	 * managers). Orders are checked one page at a time.
+	 * @return The number of orders whose totals were rebuilt
+	 */
+	public int checkTotals() {
+		int rebuilt = 0;
+		int afterId = 0;
+		List<OrderSummary> computed;
+		do {
+			computed = dao.findSummaryPage(afterId, TOTALS_CHECK_PAGE_SIZE);
+			if(null == computed || computed.isEmpty()) break;
+			
+			List<Integer> ids = new ArrayList<Integer>();
+			for(OrderSummary s : computed) {
+				ids.add(s.getId());
+			}
+			Map<Integer, Order> stored = dao.findByIds(ids, totals); // Only the totals are compared
+			if(null == stored) break;
+			
+			for(OrderSummary s : computed) {
+				Order o = stored.get(s.getId());
+				if(null != o && hasDrifted(o, s)) {
+					// Rebuilt from the lines as they are now, so it does not matter if they changed since
+					LOGGER.log(Level.WARNING, "OrderManager:checkTotals rebuilding the totals of order " + o.getId());
+					Transaction.execute(tx -> dao.rebuildTotals(tx, o.getId()));
+					++rebuilt;
+				}
+			}
+			afterId = computed.get(computed.size() - 1).getId();
+		} while(computed.size() == TOTALS_CHECK_PAGE_SIZE);
+		
+		return rebuilt;
+	}
+	
+	/**
+	 * Starts checking the stored order totals in the background, as
+	 * per {@link #startTotalsCheck(long)}, every
+	 * {@link #DEFAULT_TOTALS_CHECK_PERIOD_MS} milliseconds.
+	 */
+	public void startTotalsCheck() {
+		startTotalsCheck(DEFAULT_TOTALS_CHECK_PERIOD_MS);
+	}
+	
+	/**
+	 * Starts running {@link #checkTotals()} in the background, on a
+	 * daemon thread, every periodMillis milliseconds. Does nothing
+	 * if the check is already running.
+	 * @param periodMillis - the time between two checks
+	 */
+	public synchronized void startTotalsCheck(long periodMillis) {
+		if(null != totalsChecker) return;
+		totalsChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "order-totals-check");
+			t.setDaemon(true);
+			return t;
+		});
+		totalsChecker.scheduleWithFixedDelay(() -> {
+			try {
+				checkTotals();
+			} catch (RuntimeException e) { // Keep checking next time
+				LOGGER.log(Level.WARNING, "OrderManager:checkTotals " + e.getMessage());
+			}
+		}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Stops the background check of the stored order totals, if running.
+	 */
+	public synchronized void stopTotalsCheck() {
+		if(null == totalsChecker) return;
+		totalsChecker.shutdownNow();
+		totalsChecker = null;
+	}
+	
+	/**
+	 * Tells whether an order's stored totals differ
+	 * from the ones worked out from its lines.
+	 * @param o - the order, with its stored totals
+	 * @param s - the order's summary, with the worked out totals
+	 * @return True if the totals differ
+	 */
+	private boolean hasDrifted(Order o, OrderSummary s) {
+		BigDecimal computedPrice = null == s.getTotalPrice() ? BigDecimal.ZERO : s.getTotalPrice();
+		return o.getNoOfItems() != s.getNoOfItems()
+			|| null == o.getTotalPrice()
+			|| 0 != o.getTotalPrice().compareTo(computedPrice);
+	}
+	
+	/**
+	 * Converts a list of elements to a list of DTOs.
+	 * @param orders - the Order objects to convert
+	 * @return A list of OrderDTO objects
+	 */
+	private List<OrderDTO> elemsToDtos(List<Order> orders) {
+		List<OrderDTO> dtos = new ArrayList<OrderDTO>();
+		
+		for(Order o : orders) {
+			dtos.add(elemToDto(o));
+		}
+		
+		return dtos;
+	}
+	
 	/**
 	 * Converts a DTO to an element.
 	 * @param dto - the OrderDTO to convert
@@ -60,30 +297,16 @@ public class OrderManager implements AbstractManager<OrderDTO> {
 	}
 	
 	/**
-	 * Converts an element to a DTO.
+	 * Converts an element, with its stored totals, to a DTO.
 	 * @param o - the Order to convert
 	 * @return An OrderDTO with the relevant data
 	 */
 	private OrderDTO elemToDto(Order o) {
 		OrderDTO dto = new OrderDTO();
-		// Transmitted
 		dto.setId(o.getId());
 		dto.setUserId(o.getUser_id());
-		
-		//Computed
-		int noOfItems = 0;
-		BigDecimal totalPrice = BigDecimal.ZERO;
-		
-		List<OrderItem> orderItems = oiDao.findByOrderId(o.getId());
-		for(OrderItem oi : orderItems) {
-			noOfItems += oi.getAmount();
-			totalPrice = totalPrice.add(iDao.findById(oi.getItem_id()).getPrice()
-						   		        .multiply(new BigDecimal( oi.getAmount()) ));
-		}
-		
-		dto.setNoOfItems(noOfItems);
-		dto.setTotalPrice(totalPrice);
-		
+		dto.setNoOfItems(o.getNoOfItems());
+		dto.setTotalPrice(o.getTotalPrice());
 		return dto;
 	}
 
@@ -2,6 +2,7 @@ package business.managers;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import dao.UserDAO;
 import dto.UserDTO;
@@ -11,25 +12,40 @@ public class UserManager implements AbstractManager<UserDTO> {
 	private UserDAO dao = new UserDAO();
 
 	public List<UserDTO> getAll() {
-		List<User> orders = dao.findAll();
-		List<UserDTO> dtos = new ArrayList<UserDTO>();
-		
-		for(User u : orders) {
-			dtos.add(elemToDto(u));
-		}
-		
-		return dtos;
+		return elemsToDtos(dao.findAll());
 	}
 	
 	public UserDTO getById(int id) {
 		return elemToDto(dao.findById(id));
 	}
+	
+	public int count() {
+		return dao.count();
+	}
+	
+	public List<UserDTO> getPage(int afterId, int limit) {
+		return elemsToDtos(dao.findPage(afterId, limit));
+	}
+	
+	public List<UserDTO> getPageBefore(int beforeId, int limit) {
+		return elemsToDtos(dao.findPageBefore(beforeId, limit));
+	}
+	
+	public List<UserDTO> getPageAt(int offset, int limit) {
+		return elemsToDtos(dao.findPageAt(offset, limit));
+	}
 
 	public UserDTO update(UserDTO dto) {
 		User u = dtoToElem(dto);
 		
 		return elemToDto(dao.update(u));
 	}
+	
+	public UserDTO update(UserDTO dto, Set<String> changedFields) {
+		User u = dtoToElem(dto);
+		
+		return elemToDto(dao.update(u, changedFields)); // Same field names as the User's columns
+	}
 
 	public void delete(UserDTO dto) {
 		dao.delete(dtoToElem(dto));
@@ -41,6 +57,21 @@ public class UserManager implements AbstractManager<UserDTO> {
 		return elemToDto(dao.insert(u));
 	}
 	
+	/**
+	 * Converts a list of elements to a list of DTOs.
+	 * @param users - the User objects to convert
+	 * @return A list of UserDTO objects
+	 */
+	private List<UserDTO> elemsToDtos(List<User> users) {
+		List<UserDTO> dtos = new ArrayList<UserDTO>();
+		
+		for(User u : users) {
+			dtos.add(elemToDto(u));
+		}
+		
+		return dtos;
+	}
+	
 	/**
 	 * Converts a DTO to an element.
 	 * @param dto - the UserDTO to convert
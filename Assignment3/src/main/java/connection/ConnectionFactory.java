@@ -1,13 +1,18 @@
 package connection;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import metrics.Metrics;
+import metrics.OperationMetrics;
+import metrics.OperationTimer;
+import metrics.QueryDiagnostics;
+
 /**
  * @Author: Technical University of Cluj-Napoca, Romania Distributed Systems
  *          Research Laboratory, http://dsrl.coned.utcluj.ro/
@@ -18,11 +23,38 @@ public class ConnectionFactory {
 
 	private static final Logger LOGGER = Logger.getLogger(ConnectionFactory.class.getName());
 	private static final String DRIVER = "com.mysql.cj.jdbc.Driver";
-	private static final String DBURL = "jdbc:mysql://localhost:3306/a3_warehouse";
-	private static final String USER = "root";
-	private static final String PASS = "root";
+	// Server-side prepared statements, so that the statements we cache are only parsed once,
+	// batches rewritten into multi-row statements, so that a batch is one round trip,
+	// and cursor fetches for statements that ask for a fetch size (used when streaming)
+	private static final String DEFAULT_DBURL = "jdbc:mysql://localhost:3306/a3_warehouse"
+									  + "?useServerPrepStmts=true&rewriteBatchedStatements=true&useCursorFetch=true";
+	
+	/**
+	 * System properties that, when set, replace the default database URL,
+	 * user and password (e.g. to point the benchmarks at an embedded database).
+	 */
+	public static final String URL_PROPERTY = "warehouse.db.url";
+	public static final String USER_PROPERTY = "warehouse.db.user";
+	public static final String PASS_PROPERTY = "warehouse.db.password";
+	
+	private static final String DBURL = System.getProperty(URL_PROPERTY, DEFAULT_DBURL);
+	private static final String USER = System.getProperty(USER_PROPERTY, "root");
+	private static final String PASS = System.getProperty(PASS_PROPERTY, "root");
+	
+	// Pool settings
+	private static final int MAX_POOL_SIZE = 10;
+	private static final long BORROW_TIMEOUT_MS = 5000;
+	private static final long IDLE_TIMEOUT_MS = 5 * 60 * 1000;
+	private static final long VALIDATION_INTERVAL_MS = 500; // Connections returned this recently skip validation
+	private static final int VALIDATION_TIMEOUT_S = 2;
+	private static final int STATEMENT_CACHE_SIZE = 32; // Per connection
+
+	// Time spent waiting for a connection; failures are borrows that gave up
+	private static final OperationMetrics ACQUIRE_METRICS = Metrics.forConnectionPool("getConnection");
 
 	private static ConnectionFactory singleInstance = new ConnectionFactory();
+	
+	private final ConnectionPool pool;
 
 	private ConnectionFactory() {
 		try {
@@ -30,37 +62,95 @@ public class ConnectionFactory {
 		} catch (ClassNotFoundException e) {
 			e.printStackTrace();
 		}
+		pool = new ConnectionPool(DBURL, USER, PASS, MAX_POOL_SIZE, BORROW_TIMEOUT_MS,
+				IDLE_TIMEOUT_MS, VALIDATION_INTERVAL_MS, VALIDATION_TIMEOUT_S, STATEMENT_CACHE_SIZE);
 	}
 
-	private Connection createConnection() {
-		Connection connection = null;
-		try {
-			connection = DriverManager.getConnection(DBURL, USER, PASS);
-		} catch (SQLException e) {
-			LOGGER.log(Level.WARNING, "An error occured while trying to connect to the database");
-			e.printStackTrace();
-		}
-		return connection;
-	}
-
+	/**
+	 * Borrows a connection from the connection pool. The connection
+	 * must be given back through {@link #close(Connection)} once it
+	 * is no longer needed. Returns null if no connection could be
+	 * obtained in a reasonable amount of time. The time spent
+	 * waiting is published over JMX (see {@link Metrics}).
+	 * @return A connection to the database, or null
+	 */
 	public static Connection getConnection() {
-		return singleInstance.createConnection();
+		try (OperationTimer timer = ACQUIRE_METRICS.start()) {
+			Connection connection = singleInstance.pool.borrow();
+			if (connection != null) timer.done();
+			return connection;
+		}
 	}
 
+	/**
+	 * Gives the given connection back to the connection pool.
+	 * Despite the name, the underlying connection stays open so
+	 * that the next {@link #getConnection()} can re-use it.
+	 * @param connection - a connection obtained from {@link #getConnection()}
+	 */
 	public static void close(Connection connection) {
 		if (connection != null) {
-			try {
-				connection.close();
-			} catch (SQLException e) {
-				LOGGER.log(Level.WARNING, "An error occured while trying to close the connection");
-			}
+			singleInstance.pool.release(connection);
 		}
 	}
+	
+	/**
+	 * Prepares the given query on the given connection. If the
+	 * same query has been prepared on this connection before, the
+	 * cached statement is handed out again instead. The statement
+	 * must be given back through {@link #close(Statement)}. In the
+	 * diagnostic mode, the statement is watched by {@link QueryDiagnostics}.
+	 * @param connection - a connection obtained from {@link #getConnection()}
+	 * @param sql - the query to prepare
+	 * @return A PreparedStatement with no parameters set
+	 * @throws SQLException if the statement cannot be prepared
+	 */
+	public static PreparedStatement prepareStatement(Connection connection, String sql) throws SQLException {
+		return QueryDiagnostics.track(singleInstance.pool.prepare(connection, sql, Statement.NO_GENERATED_KEYS), sql);
+	}
+	
+	/**
+	 * Same as {@link #prepareStatement(Connection, String)}, but
+	 * allows asking for the generated keys to be returned.
+	 * @param connection - a connection obtained from {@link #getConnection()}
+	 * @param sql - the query to prepare
+	 * @param autoGeneratedKeys - {@link Statement#RETURN_GENERATED_KEYS} or
+	 * 		{@link Statement#NO_GENERATED_KEYS}
+	 * @return A PreparedStatement with no parameters set
+	 * @throws SQLException if the statement cannot be prepared
+	 */
+	public static PreparedStatement prepareStatement(Connection connection, String sql, int autoGeneratedKeys)
+			throws SQLException {
+		return QueryDiagnostics.track(singleInstance.pool.prepare(connection, sql, autoGeneratedKeys), sql);
+	}
+	
+	/**
+	 * Returns a snapshot of the connection pool's current
+	 * state and usage counters.
+	 * @return A PoolStatistics object
+	 */
+	public static PoolStatistics getPoolStatistics() {
+		return singleInstance.pool.getStatistics();
+	}
+	
+	/**
+	 * Closes all the idle pooled connections. Connections still
+	 * in use are closed when they are given back.
+	 */
+	public static void shutdown() {
+		singleInstance.pool.shutdown();
+	}
 
+	/**
+	 * Gives back the given statement. Statements that are cached
+	 * on their connection stay open for re-use; anything else is
+	 * closed.
+	 * @param statement - the statement to close
+	 */
 	public static void close(Statement statement) {
 		if (statement != null) {
 			try {
-				statement.close();
+				singleInstance.pool.release(QueryDiagnostics.unwrap(statement));
 			} catch (SQLException e) {
 				LOGGER.log(Level.WARNING, "An error occured while trying to close the statement");
 			}
@@ -0,0 +1,347 @@
+package connection;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded pool of JDBC connections. At most <i>maxSize</i>
+ * connections are ever open at once; borrowers that find the
+ * pool exhausted wait up to <i>borrowTimeout</i> for one to be
+ * returned. Idle connections are re-used most-recently-returned
+ * first, so that the ones at the bottom of the stack can be evicted
+ * once they have been idle for longer than <i>idleTimeout</i>.
+ * <br>
+ * Every pooled connection also keeps a small cache of the
+ * statements prepared on it (see {@link StatementCache}), so that
+ * repeated queries are neither rebuilt nor re-parsed by the server.
+ */
+class ConnectionPool { // Package-visible, everyone else goes through ConnectionFactory
+	private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+
+	private final String url;
+	private final String user;
+	private final String pass;
+
+	private final int maxSize;
+	private final long borrowTimeoutMillis;
+	private final long idleTimeoutMillis;
+	private final long validationIntervalMillis;
+	private final int validationTimeoutSeconds;
+	private final int statementCacheSize;
+
+	private final Semaphore permits;
+	private final Deque<PooledConnection> idle = new ArrayDeque<PooledConnection>();
+	private final Map<Connection, PooledConnection> all = new IdentityHashMap<Connection, PooledConnection>();
+	private final ScheduledExecutorService evictor;
+	private volatile boolean shutDown = false;
+
+	private final AtomicLong borrowed = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong evicted = new AtomicLong();
+	private final AtomicLong validationFailures = new AtomicLong();
+	private final AtomicLong statementHits = new AtomicLong();
+	private final AtomicLong statementMisses = new AtomicLong();
+
+	/**
+	 * Creates a new, initially empty pool. Connections are
+	 * only opened once they are first needed.
+	 * @param url - the JDBC url of the database
+	 * @param user - the user to connect as
+	 * @param pass - the user's password
+	 * @param maxSize - the maximum number of connections open at once
+	 * @param borrowTimeoutMillis - how long a borrower waits for a free connection
+	 * @param idleTimeoutMillis - how long a connection may sit unused before being closed
+	 * @param validationIntervalMillis - connections used more recently than this
+	 * 		are handed out without being validated first
+	 * @param validationTimeoutSeconds - how long to wait for a validation to answer
+	 * @param statementCacheSize - how many prepared statements each connection keeps
+	 */
+	ConnectionPool(String url, String user, String pass, int maxSize, long borrowTimeoutMillis,
+			long idleTimeoutMillis, long validationIntervalMillis, int validationTimeoutSeconds,
+			int statementCacheSize) {
+		this.url = url;
+		this.user = user;
+		this.pass = pass;
+		this.maxSize = maxSize;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.validationIntervalMillis = validationIntervalMillis;
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+		this.statementCacheSize = statementCacheSize;
+		this.permits = new Semaphore(maxSize, true);
+
+		evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "connection-pool-evictor");
+			t.setDaemon(true); // Must not keep the application alive
+			return t;
+		});
+		long period = Math.max(1000, idleTimeoutMillis / 2);
+		evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Borrows a connection from the pool, opening a new one if
+	 * none are idle and the pool is not yet full. Returns null
+	 * if no connection could be obtained within the borrow timeout.
+	 * @return A valid connection or null
+	 */
+	Connection borrow() {
+		try {
+			if(!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				timeouts.incrementAndGet();
+				LOGGER.log(Level.WARNING, "Timed out after " + borrowTimeoutMillis
+						+ "ms waiting for a database connection");
+				return null;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+
+		// From here on we hold a permit, which we must give back if we fail
+		PooledConnection pooled;
+		while(null != (pooled = pollIdle())) {
+			if(isUsable(pooled)) {
+				pooled.inUse = true;
+				borrowed.incrementAndGet();
+				return pooled.connection;
+			}
+			validationFailures.incrementAndGet();
+			discard(pooled);
+		}
+
+		Connection connection = open();
+		if(null == connection) {
+			permits.release();
+			return null;
+		}
+		PooledConnection fresh = new PooledConnection(connection,
+				new StatementCache(connection, statementCacheSize, statementHits, statementMisses));
+		fresh.inUse = true;
+		synchronized(this) {
+			all.put(connection, fresh);
+		}
+		borrowed.incrementAndGet();
+		return connection;
+	}
+
+	/**
+	 * Gives a borrowed connection back to the pool. Connections
+	 * that did not come from this pool are simply closed.
+	 * @param connection - the connection to give back
+	 */
+	void release(Connection connection) {
+		PooledConnection pooled;
+		synchronized(this) {
+			pooled = all.get(connection);
+			if(null != pooled) {
+				if(!pooled.inUse) return; // Already given back once, don't hand it out twice
+				pooled.inUse = false;
+			}
+		}
+		if(null == pooled) {
+			closeQuietly(connection);
+			return;
+		}
+
+		if(shutDown || !reset(pooled)) {
+			discard(pooled);
+		} else {
+			pooled.lastUsed = System.currentTimeMillis();
+			synchronized(this) {
+				idle.push(pooled);
+			}
+		}
+		permits.release();
+	}
+
+	/**
+	 * Prepares the given query on a borrowed connection, re-using
+	 * the statement cached on that connection if there is one.
+	 * Statements obtained this way must be given back through
+	 * {@link #release(Statement)} rather than closed.
+	 * @param connection - a connection borrowed from this pool
+	 * @param sql - the query
+	 * @param autoGeneratedKeys - whether generated keys should be returned
+	 * @return A PreparedStatement with no parameters set
+	 * @throws SQLException if the statement cannot be prepared
+	 */
+	PreparedStatement prepare(Connection connection, String sql, int autoGeneratedKeys) throws SQLException {
+		PooledConnection pooled;
+		synchronized(this) {
+			pooled = all.get(connection);
+		}
+		if(null == pooled) return connection.prepareStatement(sql, autoGeneratedKeys);
+		return pooled.statements.prepare(sql, autoGeneratedKeys);
+	}
+
+	/**
+	 * Gives a statement back. Statements owned by a connection's
+	 * cache are only cleared so they can be re-used, everything
+	 * else is really closed.
+	 * @param statement - the statement to give back
+	 * @throws SQLException if the statement cannot be cleared or closed
+	 */
+	void release(Statement statement) throws SQLException {
+		PooledConnection pooled;
+		synchronized(this) {
+			pooled = all.get(statement.getConnection());
+		}
+		if(null != pooled && pooled.statements.owns(statement)) {
+			((PreparedStatement) statement).clearParameters();
+			statement.clearBatch(); // A failed batch must not be replayed by the next user
+		} else {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Returns a snapshot of this pool's current state and
+	 * its counters since it was created.
+	 * @return A PoolStatistics object
+	 */
+	PoolStatistics getStatistics() {
+		int total, idleCount;
+		synchronized(this) {
+			total = all.size();
+			idleCount = idle.size();
+		}
+		return new PoolStatistics(maxSize, total, idleCount, total - idleCount,
+				permits.getQueueLength(), borrowed.get(), timeouts.get(),
+				created.get(), evicted.get(), validationFailures.get(),
+				statementHits.get(), statementMisses.get());
+	}
+
+	/**
+	 * Closes every idle connection and stops the evictor. Connections
+	 * currently borrowed are closed as they are returned.
+	 */
+	synchronized void shutdown() {
+		shutDown = true;
+		evictor.shutdownNow();
+		for(PooledConnection pooled : idle) {
+			all.remove(pooled.connection);
+			pooled.statements.clear();
+			closeQuietly(pooled.connection);
+		}
+		idle.clear();
+	}
+
+	private synchronized PooledConnection pollIdle() {
+		return idle.poll();
+	}
+
+	/**
+	 * Checks whether an idle connection may be handed out. Connections
+	 * that were returned very recently are trusted without a round trip.
+	 */
+	private boolean isUsable(PooledConnection pooled) {
+		try {
+			if(pooled.connection.isClosed()) return false;
+			if(System.currentTimeMillis() - pooled.lastUsed < validationIntervalMillis) return true;
+			return pooled.connection.isValid(validationTimeoutSeconds);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Puts a connection back into the state a fresh borrower expects.
+	 * @return Whether the connection can be re-used
+	 */
+	private boolean reset(PooledConnection pooled) {
+		try {
+			if(pooled.connection.isClosed()) return false;
+			if(!pooled.connection.getAutoCommit()) {
+				pooled.connection.rollback(); // Never leak half a transaction to the next borrower
+				pooled.connection.setAutoCommit(true);
+			}
+			return true;
+		} catch (SQLException e) {
+			LOGGER.log(Level.WARNING, "Discarding a connection that could not be reset: " + e.getMessage());
+			return false;
+		}
+	}
+
+	private Connection open() {
+		try {
+			Connection connection = DriverManager.getConnection(url, user, pass);
+			created.incrementAndGet();
+			return connection;
+		} catch (SQLException e) {
+			LOGGER.log(Level.WARNING, "An error occured while trying to connect to the database");
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private void discard(PooledConnection pooled) {
+		synchronized(this) {
+			all.remove(pooled.connection);
+		}
+		pooled.statements.clear();
+		closeQuietly(pooled.connection);
+	}
+
+	/**
+	 * Closes the connections that have been idle for too long.
+	 * The idle stack is ordered by last use, so the stale ones
+	 * are all at its bottom.
+	 */
+	private void evictIdle() {
+		long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+		synchronized(this) {
+			Iterator<PooledConnection> it = idle.descendingIterator();
+			while(it.hasNext()) {
+				PooledConnection pooled = it.next();
+				if(pooled.lastUsed > cutoff) break;
+				it.remove();
+				all.remove(pooled.connection);
+				pooled.statements.clear();
+				closeQuietly(pooled.connection);
+				evicted.incrementAndGet();
+			}
+		}
+	}
+
+	private static void closeQuietly(Connection connection) {
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			LOGGER.log(Level.WARNING, "An error occured while trying to close the connection");
+		}
+	}
+
+	/**
+	 * A physical connection together with the bookkeeping
+	 * the pool needs for it.
+	 */
+	private static class PooledConnection {
+		private final Connection connection;
+		private final StatementCache statements;
+		private long lastUsed;
+		private boolean inUse;
+
+		PooledConnection(Connection connection, StatementCache statements) {
+			this.connection = connection;
+			this.statements = statements;
+			this.lastUsed = System.currentTimeMillis();
+		}
+	}
+}
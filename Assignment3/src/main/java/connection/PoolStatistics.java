@@ -0,0 +1,35 @@
+package connection;
+
+import lombok.Value;
+
+/**
+ * An immutable snapshot of the connection pool's state,
+ * as returned by {@link ConnectionFactory#getPoolStatistics()}.
+ */
+@Value
+public class PoolStatistics {
+	/** The most connections the pool will ever have open */
+	private int maxSize;
+	/** Connections currently open, whether idle or borrowed */
+	private int totalConnections;
+	private int idleConnections;
+	private int activeConnections;
+	/** Threads currently waiting for a connection */
+	private int waitingThreads;
+	
+	/** Successful borrows since start-up */
+	private long borrowCount;
+	/** Borrows that gave up waiting for a free connection */
+	private long timeoutCount;
+	/** Physical connections opened since start-up */
+	private long createdCount;
+	/** Connections closed for being idle too long */
+	private long evictedCount;
+	/** Idle connections found broken when borrowed */
+	private long validationFailureCount;
+	
+	/** Prepared statements re-used from a connection's cache */
+	private long statementCacheHits;
+	/** Prepared statements that had to be prepared anew */
+	private long statementCacheMisses;
+}
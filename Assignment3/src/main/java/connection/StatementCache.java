@@ -0,0 +1,124 @@
+package connection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded, least-recently-used cache of the prepared statements
+ * of a single pooled connection. A connection is only ever used by
+ * whoever borrowed it, so the cache needs no locking of its own.
+ * Statements pushed out of the cache are closed.
+ */
+class StatementCache { // Package-visible
+	private static final Logger LOGGER = Logger.getLogger(StatementCache.class.getName());
+
+	private final Connection connection;
+	private final Map<Key, PreparedStatement> statements;
+	private final Map<Statement, Boolean> cached = new IdentityHashMap<Statement, Boolean>();
+
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
+	/**
+	 * Creates a new, empty cache for the given connection.
+	 * @param connection - the physical connection the statements belong to
+	 * @param maxSize - the most statements kept at once
+	 * @param hits - the (shared) counter to increase on every hit
+	 * @param misses - the (shared) counter to increase on every miss
+	 */
+	@SuppressWarnings("serial")
+	StatementCache(Connection connection, final int maxSize, AtomicLong hits, AtomicLong misses) {
+		this.connection = connection;
+		this.hits = hits;
+		this.misses = misses;
+		this.statements = new LinkedHashMap<Key, PreparedStatement>(16, 0.75f, true) { // Access-ordered
+			protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> eldest) {
+				if(size() <= maxSize) return false;
+				cached.remove(eldest.getValue());
+				closeQuietly(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Returns a prepared statement for the given query, re-using
+	 * a previously prepared one if possible.
+	 * @param sql - the query
+	 * @param autoGeneratedKeys - either {@link Statement#RETURN_GENERATED_KEYS}
+	 * 		or {@link Statement#NO_GENERATED_KEYS}
+	 * @return A PreparedStatement with no parameters set
+	 * @throws SQLException if the statement cannot be prepared
+	 */
+	PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+		Key key = new Key(sql, autoGeneratedKeys);
+		PreparedStatement statement = statements.get(key);
+		if(null != statement && !statement.isClosed()) {
+			hits.incrementAndGet();
+			return statement;
+		}
+
+		misses.incrementAndGet();
+		statement = connection.prepareStatement(sql, autoGeneratedKeys);
+		statements.put(key, statement);
+		cached.put(statement, Boolean.TRUE);
+		return statement;
+	}
+
+	/**
+	 * Checks whether the given statement is owned by this cache,
+	 * in which case it must not be closed by its user.
+	 * @param statement - a statement
+	 * @return Whether the statement is cached
+	 */
+	boolean owns(Statement statement) {
+		return cached.containsKey(statement);
+	}
+
+	/**
+	 * Closes all the cached statements and empties the cache.
+	 */
+	void clear() {
+		for(PreparedStatement statement : statements.values()) {
+			closeQuietly(statement);
+		}
+		statements.clear();
+		cached.clear();
+	}
+
+	private static void closeQuietly(Statement statement) {
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			LOGGER.log(Level.WARNING, "An error occured while trying to close the statement");
+		}
+	}
+
+	private static final class Key {
+		private final String sql;
+		private final int autoGeneratedKeys;
+
+		Key(String sql, int autoGeneratedKeys) {
+			this.sql = sql;
+			this.autoGeneratedKeys = autoGeneratedKeys;
+		}
+
+		public int hashCode() {
+			return sql.hashCode() * 31 + autoGeneratedKeys;
+		}
+
+		public boolean equals(Object o) {
+			if(!(o instanceof Key)) return false;
+			Key other = (Key) o;
+			return autoGeneratedKeys == other.autoGeneratedKeys && sql.equals(other.sql);
+		}
+	}
+}
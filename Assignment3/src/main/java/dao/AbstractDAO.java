@@ -1,10 +1,5 @@
 package dao;
 
-import java.beans.IntrospectionException;
-import java.beans.PropertyDescriptor;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -12,12 +7,29 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import connection.ConnectionFactory;
+import dao.memory.MemoryDatabase;
+import dao.memory.MemoryTable;
+import metrics.Metrics;
+import metrics.OperationMetrics;
+import metrics.OperationTimer;
 
 /**
  * @Author: Technical University of Cluj-Napoca, Romania Distributed Systems
@@ -27,36 +39,146 @@ import connection.ConnectionFactory;
  */
 public class AbstractDAO<T> {
 	protected static final Logger LOGGER = Logger.getLogger(AbstractDAO.class.getName());
+	
+	/**
+	 * The number of rows sent to the database in one round trip
+	 * by the batch operations, unless told otherwise.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	
+	/**
+	 * The number of rows fetched from the server at once by
+	 * {@link #streamAll()}, unless told otherwise.
+	 */
+	public static final int DEFAULT_FETCH_SIZE = 1000;
+	
+	/**
+	 * The most ids put in the IN (...) list of a single query
+	 * by {@link #findByIds(Collection)}.
+	 */
+	public static final int MAX_IN_LIST_SIZE = 512;
 
 	private final Class<?> type;
+	private final EntityMetadata<T> meta;
+	private final MemoryTable<T> memory; // Null unless the in-memory backend was chosen; see Storage
+	
+	// SQL templates; generated once per DAO, then re-used for every call
+	private final String selectAllQuery;
+	private final String countQuery;
+	private final String insertQuery;
+	private final String pageAfterQuery;
+	private final String pageBeforeQuery;
+	private final String pageAtQuery;
+	private final String lockByIdQuery;
+	private final int[] updatableColumns; // Every column but the id, which is what rows are updated by
+	private final ConcurrentMap<String, String> selectQueries = new ConcurrentHashMap<String, String>();
+	private final ConcurrentMap<String, String> updateQueries = new ConcurrentHashMap<String, String>();
+	private final ConcurrentMap<String, String> updateColumnsQueries = new ConcurrentHashMap<String, String>();
+	private final ConcurrentMap<String, String> deleteQueries = new ConcurrentHashMap<String, String>();
+	private final ConcurrentMap<Integer, String> inListQueries = new ConcurrentHashMap<Integer, String>();
+	private final ConcurrentMap<String, Projection<T>> projections = new ConcurrentHashMap<String, Projection<T>>();
+	
+	// One per operation name, so that timing a call needs no string building
+	private final ConcurrentMap<String, OperationMetrics> metrics = new ConcurrentHashMap<String, OperationMetrics>();
 
 	/**
 	 * @Deprecated Usage of this constructor is not recommended, as it relies on
 	 * a complicated and somewhat unreliable construction that serves to deduce
 	 * a parameter that would be very, very simple to just receive.
 	 * **/
+	@SuppressWarnings("unchecked")
 	public AbstractDAO() {
 		this.type = (Class<?>) ((ParameterizedType) getClass().getGenericSuperclass()).getActualTypeArguments()[0];
+		this.meta = EntityMetadata.forType((Class<T>) type);
+		this.selectAllQuery = buildSelectAllQuery();
+		this.countQuery = "SELECT COUNT(*) FROM `" + type.getSimpleName() + "`";
+		this.insertQuery = buildInsertQuery();
+		this.pageAfterQuery = buildPageQuery(">", "ASC");
+		this.pageBeforeQuery = buildPageQuery("<", "DESC");
+		this.pageAtQuery = selectAllQuery + " ORDER BY id ASC LIMIT ? OFFSET ?";
+		this.lockByIdQuery = buildSelectQuery("id") + " FOR UPDATE";
+		this.updatableColumns = findUpdatableColumns();
+		this.memory = Storage.isInMemory() ? MemoryDatabase.getInstance().table((Class<T>) type) : null;
 		// VERY VERY IMPORTANT NOTE: BECAUSE OF THIS LINE, YOU ABSOLUTELY
 		// CANNOT INSTANTIATE AN ACTUAL AbstractDAO<T> OBJECT, ELSE IT WILL CRASH!
 		// ...
 		// Unless you use the other constructor, that is.
 	}
 	
+	@SuppressWarnings("unchecked")
 	public AbstractDAO(Class<?> type) {
 		this.type = type;
+		this.meta = EntityMetadata.forType((Class<T>) type);
+		this.selectAllQuery = buildSelectAllQuery();
+		this.countQuery = "SELECT COUNT(*) FROM `" + type.getSimpleName() + "`";
+		this.insertQuery = buildInsertQuery();
+		this.pageAfterQuery = buildPageQuery(">", "ASC");
+		this.pageBeforeQuery = buildPageQuery("<", "DESC");
+		this.pageAtQuery = selectAllQuery + " ORDER BY id ASC LIMIT ? OFFSET ?";
+		this.lockByIdQuery = buildSelectQuery("id") + " FOR UPDATE";
+		this.updatableColumns = findUpdatableColumns();
+		this.memory = Storage.isInMemory() ? MemoryDatabase.getInstance().table((Class<T>) type) : null;
+	}
+	
+	private int[] findUpdatableColumns() {
+		int[] columns = new int[meta.getColumnCount() - 1];
+		for (int i = 0, n = 0; i < meta.getColumnCount(); ++i) {
+			if (i != meta.getIdIndex()) columns[n++] = i;
+		}
+		return columns;
+	}
+	
+	/**
+	 * Returns the pre-computed metadata (columns, accessors)
+	 * of the type this DAO handles.
+	 * @return The EntityMetadata of this DAO's type
+	 */
+	protected EntityMetadata<T> getMetadata() {
+		return meta;
+	}
+	
+	/**
+	 * Returns the in-memory table this DAO reads and writes
+	 * instead of the database, if the in-memory backend was
+	 * chosen (see {@link Storage}). Subclasses check this to
+	 * pick between their SQL and in-memory versions.
+	 * @return The MemoryTable of this DAO's type, or null
+	 */
+	protected MemoryTable<T> getMemoryTable() {
+		return memory;
+	}
+	
+	/**
+	 * Starts timing one call of the given operation on this DAO's
+	 * type, for the metrics published over JMX (see {@link Metrics}).
+	 * The timer must be closed when the call ends; the call counts as
+	 * failed unless it was marked {@link OperationTimer#done(Object) done}.
+	 * Only database calls are timed, not the in-memory backend.
+	 * @param operation - the name of the operation, e.g. "findById"
+	 * @return A running OperationTimer
+	 */
+	protected OperationTimer time(String operation) {
+		OperationMetrics m = metrics.get(operation);
+		if (null == m) m = metrics.computeIfAbsent(operation, op -> Metrics.forDao(type.getSimpleName(), op));
+		return m.start();
 	}
 
 	/**
 	 * Creates an SQL query of the type 		  <br>
 	 * <b>SELECT</b> * <b>FROM</b> &lt;table&gt;  <br>
 	 *  <b>WHERE</b> &lt;field&gt; = ?			  <br>
-	 * to be used for creating a {@link PreparedStatement}
+	 * to be used for creating a {@link PreparedStatement}.
+	 * The query is only built the first time a given field is
+	 * asked for; afterwards, the same String is returned.
 	 * @param field - the name of the field to be used in
 	 * 				  the WHERE clause
 	 * @return A String containing the SELECT query
 	 */
 	protected String createSelectQuery(String field) {
+		return selectQueries.computeIfAbsent(field, this::buildSelectQuery);
+	}
+	
+	private String buildSelectQuery(String field) {
 		StringBuilder sb = new StringBuilder();
 		sb.append("SELECT ");
 		sb.append(" * ");
@@ -71,20 +193,25 @@ public class AbstractDAO<T> {
 	 * <b>INSERT</b> (&lt;column names&gt;)     <br>
 	 * <b>INTO</b> &lt;table&gt; 				<br>
 	 * <b>VALUES</b> (&lt;? to be filled&gt;)   <br>
-	 * to be used for creating a {@link PreparedStatement}
+	 * to be used for creating a {@link PreparedStatement}.
+	 * The query is built once, when the DAO is created.
 	 * @return A String containing the INSERT query
 	 */
 	protected String createInsertQuery() {
+		return insertQuery;
+	}
+	
+	private String buildInsertQuery() {
 		StringBuilder sb = new StringBuilder();
 		sb.append("INSERT INTO ");
 		sb.append("`" + type.getSimpleName() + "`");
 		
-		// Generate the list of column names reflexively.
+		// Generate the list of column names from the metadata.
 		// Also prepare the question marks in advance.
 		StringJoiner cols = new StringJoiner(", ", " (", ") ");
 		StringJoiner questionMarks = new StringJoiner(", ", " (", ") ");
-		for (Field field : type.getDeclaredFields()) {
-			cols.add(field.getName());
+		for (String column : meta.getColumns()) {
+			cols.add(column);
 			questionMarks.add("?");
 		}
 		sb.append(cols.toString());
@@ -100,21 +227,54 @@ public class AbstractDAO<T> {
 	 * <b>UPDATE</b> &lt;table&gt;			<br>
 	 * <b>SET</b> (&lt;param&gt; = ?, ...) 	<br>
 	 * <b>WHERE</b> &lt;field name&gt; = ?  <br>
-	 * to be used for creating a {@link PreparedStatement}
+	 * to be used for creating a {@link PreparedStatement}.
+	 * Every column but the id is SET, the id being what
+	 * rows are told apart by.
+	 * The query is only built the first time a given field is
+	 * asked for; afterwards, the same String is returned.
 	 * @param whereFieldName - name of the field to be checked for
 	 * 						   in the WHERE clause
 	 * @return A String containing the UPDATE query
 	 */
 	protected String createUpdateQuery(String whereFieldName) {
+		return updateQueries.computeIfAbsent(whereFieldName, this::buildUpdateQuery);
+	}
+	
+	private String buildUpdateQuery(String whereFieldName) {
+		return buildUpdateQuery(updatableColumns, whereFieldName);
+	}
+	
+	/**
+	 * Creates an SQL query of the type  	<br>
+	 * <b>UPDATE</b> &lt;table&gt;			<br>
+	 * <b>SET</b> (&lt;column&gt; = ?, ...) <br>
+	 * <b>WHERE</b> id = ?  				<br>
+	 * that only SETs the given columns, to be used for creating a
+	 * {@link PreparedStatement}. The query is only built the first
+	 * time the same columns are asked for.
+	 * @param columns - the indexes of the columns to SET, as per
+	 * 		{@link EntityMetadata#getColumns()}, in increasing order
+	 * @return A String containing the UPDATE query
+	 */
+	private String createUpdateQuery(int[] columns) {
+		StringJoiner key = new StringJoiner(",");
+		for (int column : columns) {
+			key.add(Integer.toString(column));
+		}
+		return updateColumnsQueries.computeIfAbsent(key.toString(), k -> buildUpdateQuery(columns, "id"));
+	}
+	
+	private String buildUpdateQuery(int[] columns, String whereFieldName) {
 		StringBuilder sb = new StringBuilder();
 		sb.append("UPDATE ");
 		sb.append("`" + type.getSimpleName() + "`");
 		sb.append(" SET ");
 		
-		// Generate the list of column names reflexively.
+		// Generate the list of column names from the metadata.
 		StringJoiner cols = new StringJoiner(", ");
-		for (Field field : type.getDeclaredFields()) {
-			cols.add(field.getName() + " = ?");
+		List<String> names = meta.getColumns();
+		for (int column : columns) {
+			cols.add(names.get(column) + " = ?");
 		}
 		sb.append(cols.toString());
 		
@@ -129,12 +289,18 @@ public class AbstractDAO<T> {
 	 * Creates an SQL query of the type  	<br>
 	 * <b>DELETE FROM</b> &lt;table&gt;     <br>
 	 * <b>WHERE</b> &lt;field name&gt; = ?  <br>
-	 * to be used for creating a {@link PreparedStatement}
+	 * to be used for creating a {@link PreparedStatement}.
+	 * The query is only built the first time a given field is
+	 * asked for; afterwards, the same String is returned.
 	 * @param whereFieldName - name of the field to be checked for
 	 * 						   in the WHERE clause
 	 * @return A String containing the DELETE query
 	 */
 	protected String createDeleteQuery(String whereFieldName) {
+		return deleteQueries.computeIfAbsent(whereFieldName, this::buildDeleteQuery);
+	}
+	
+	private String buildDeleteQuery(String whereFieldName) {
 		StringBuilder sb = new StringBuilder();
 		sb.append("DELETE FROM ");
 		sb.append("`" + type.getSimpleName() + "`");
@@ -147,30 +313,81 @@ public class AbstractDAO<T> {
 	}
 
 	/**
-	 * Finds all the elements of this type in the database.
-	 * Essentially, selects all the elements from the associated table.
-	 * @return A list containing all the elements found
+	 * Returns the projection of the given columns of this DAO's type,
+	 * for reading only those columns (see {@link Projection}). The
+	 * projection, and the SQL it holds, is only built the first time
+	 * the same columns are asked for, in whatever order; afterwards,
+	 * it is re-used.
+	 * <pre>
+	 * Projection&lt;Item&gt; prices = itemDao.projection("price");
+	 * List&lt;Item&gt; items = itemDao.findAll(prices); // Only id and price filled in
+	 * </pre>
+	 * @param columns - the names of the columns to read; the id is always read
+	 * @return A Projection of those columns
+	 * @throws IllegalArgumentException if the type has no such column
 	 */
-	public List<T> findAll() {
-		// We create the query string here because it will never be re-used
-		// We could create it in a method, then feed that method to createSelectQuery,
-		// but I think that's excessively complicated.
+	public Projection<T> projection(String... columns) {
+		String key = Projection.keyOf(meta, columns); // The same for the same columns, in any order
+		Projection<T> p = projections.get(key);
+		if (null == p) p = projections.computeIfAbsent(key, k -> new Projection<T>(meta, columns));
+		return p;
+	}
+
+	/**
+	 * Creates the SQL query of the type		<br>
+	 * <b>SELECT</b> * <b>FROM</b> &lt;table&gt;<br>
+	 * used by {@link #findAll()}.
+	 * @return A String containing the SELECT query
+	 */
+	private String buildSelectAllQuery() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("SELECT ");
+		sb.append(" * ");
+		sb.append(" FROM ");
+		sb.append("`" + type.getSimpleName() + "`");
+		return sb.toString();
+	}
+
+	/**
+	 * Creates an SQL query of the type						<br>
+	 * <b>SELECT</b> * <b>FROM</b> &lt;table&gt;				<br>
+	 * <b>WHERE</b> id &lt;comparison&gt; ?					<br>
+	 * <b>ORDER BY</b> id &lt;order&gt; <b>LIMIT</b> ?		<br>
+	 * used for keyset pagination.
+	 * @param comparison - either "&gt;" or "&lt;"
+	 * @param order - either "ASC" or "DESC"
+	 * @return A String containing the SELECT query
+	 */
+	private String buildPageQuery(String comparison, String order) {
 		StringBuilder sb = new StringBuilder();
 		sb.append("SELECT ");
 		sb.append(" * ");
 		sb.append(" FROM ");
 		sb.append("`" + type.getSimpleName() + "`");
+		sb.append(" WHERE id " + comparison + " ?");
+		sb.append(" ORDER BY id " + order);
+		sb.append(" LIMIT ?");
+		return sb.toString();
+	}
+
+	/**
+	 * Finds all the elements of this type in the database.
+	 * Essentially, selects all the elements from the associated table.
+	 * @return A list containing all the elements found
+	 */
+	public List<T> findAll() {
+		if (null != memory) return memory.findAll();
 		
 		Connection connection = null;
 		PreparedStatement statement = null;
 		ResultSet resultSet = null;
-		String query = sb.toString();
-		try {
+		String query = selectAllQuery;
+		try (OperationTimer timer = time("findAll")) {
 			connection = ConnectionFactory.getConnection();
-			statement = connection.prepareStatement(query);
+			statement = ConnectionFactory.prepareStatement(connection, query);
 			resultSet = statement.executeQuery();
 
-			return createObjects(resultSet);
+			return timer.done(createObjects(resultSet));
 		} catch (SQLException e) {
 			LOGGER.log(Level.WARNING, type.getName() + "DAO:findAll " + e.getMessage());
 		} finally {
@@ -182,223 +399,1104 @@ public class AbstractDAO<T> {
 	}
 
 	/**
-	 * Finds an element of the corresponding type in the database
-	 * given its id. If no elements are found with the given id,
-	 * this method will return null.
-	 * @param id - the id of the element to be searched for
-	 * @return The element, if found, otherwise null
+	 * Counts the elements of this type in the database, without
+	 * reading any of them; e.g. to size a view that only loads the
+	 * pages it shows (see {@link #findPage(int, int)}).
+	 * @return The number of elements, or -1 on failure
 	 */
-	public T findById(int id) {
+	public int count() {
+		if (null != memory) return memory.count();
+		
 		Connection connection = null;
 		PreparedStatement statement = null;
 		ResultSet resultSet = null;
-		String query = createSelectQuery("id");
-		try {
+		try (OperationTimer timer = time("count")) {
 			connection = ConnectionFactory.getConnection();
-			statement = connection.prepareStatement(query);
-			statement.setInt(1, id);
+			statement = ConnectionFactory.prepareStatement(connection, countQuery);
 			resultSet = statement.executeQuery();
-
-			List<T> elems = createObjects(resultSet);
-			return elems.isEmpty() ? null : elems.get(0);
+			
+			resultSet.next();
+			timer.done();
+			return resultSet.getInt(1);
 		} catch (SQLException e) {
-			LOGGER.log(Level.WARNING, type.getName() + "DAO:findById " + e.getMessage());
+			LOGGER.log(Level.WARNING, type.getName() + "DAO:count " + e.getMessage());
 		} finally {
 			ConnectionFactory.close(resultSet);
 			ConnectionFactory.close(statement);
 			ConnectionFactory.close(connection);
 		}
-		return null;
+		return -1;
 	}
 
 	/**
-	 * Inserts the given element into the database. This method will
-	 * update the element's id field so that it matches the one it
-	 * gained upon being inserted
-	 * @param t - the element to be inserted
-	 * @return The same element that was inserted (with updated id)
+	 * Finds all the elements of this type in the database, as per
+	 * {@link #findAll()}, but only reads the columns of the given
+	 * projection; the other fields of the elements are left empty.
+	 * @param projection - the columns to read, from {@link #projection(String...)}
+	 * @return A list containing all the (partial) elements found
 	 */
-	public T insert(T t) {
+	public List<T> findAll(Projection<T> projection) {
+		if (null != memory) return project(memory.findAll(), projection);
+		
 		Connection connection = null;
 		PreparedStatement statement = null;
-		String query = createInsertQuery();
-		try {
+		ResultSet resultSet = null;
+		String query = projection.selectQuery();
+		try (OperationTimer timer = time("findAllProjected")) {
 			connection = ConnectionFactory.getConnection();
-			statement = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
-			
-			// Fill in the fields
-			try {
-				int currentIndex = 1;
-				for (Field field : type.getDeclaredFields()) {
-					field.setAccessible(true);
-					Object fieldValue = field.get(t);
-					statement.setObject(currentIndex++, fieldValue);
-				}
-			} catch (SecurityException e) { // TODO: don't just catch everything and do nothing!
-				e.printStackTrace();
-			} catch (IllegalAccessException e) {
-				e.printStackTrace();
-			} catch (IllegalArgumentException e) {
-				e.printStackTrace();
-			}
-			
-			statement.executeUpdate();
-			
-			// Update the id value, since it is auto-generated!
-			ResultSet generatedKeys = statement.getGeneratedKeys();
-			generatedKeys.next();
-			int newId = (int) generatedKeys.getLong(1);
-			
-			try {
-				PropertyDescriptor idDescr = new PropertyDescriptor("id", type); // We presume this field exists!!
-				Method setId = idDescr.getWriteMethod();
-				setId.invoke(t, newId);
-			} catch (IllegalAccessException e) {
-				e.printStackTrace();
-			} catch (IllegalArgumentException e) {
-				e.printStackTrace();
-			} catch (InvocationTargetException e) {
-				e.printStackTrace();
-			} catch (IntrospectionException e) {
-				e.printStackTrace();
-			}
-			
+			statement = ConnectionFactory.prepareStatement(connection, query);
+			resultSet = statement.executeQuery();
+
+			return timer.done(createObjects(resultSet, projection));
 		} catch (SQLException e) {
-			LOGGER.log(Level.WARNING, type.getName() + "DAO:insert " + e.getMessage());
+			LOGGER.log(Level.WARNING, type.getName() + "DAO:findAll " + e.getMessage());
 		} finally {
+			ConnectionFactory.close(resultSet);
 			ConnectionFactory.close(statement);
 			ConnectionFactory.close(connection);
 		}
-		
-		return t;
+		return null;
 	}
 
 	/**
-	 * Updates the database version of the given element so that it
-	 * matches the one received as parameter. Note that this method
-	 * assumes that an element with the same id as the one received
-	 * exists in the database.
-	 * @param t - the element to be updated in the database
-	 * @return The same element that was updated
+	 * Streams all the elements of this type in the database, as per
+	 * {@link #streamAll(int)}, using {@link #DEFAULT_FETCH_SIZE}.
+	 * @return A lazily-populated stream of all the elements
 	 */
-	public T update(T t) {
+	public Stream<T> streamAll() {
+		return streamAll(DEFAULT_FETCH_SIZE);
+	}
+	
+	/**
+	 * Streams all the elements of this type in the database without
+	 * ever holding the whole table in memory. Rows are read through a
+	 * server-side cursor, fetchSize rows at a time, and only turned
+	 * into objects as the stream is consumed.<br>
+	 * The stream holds on to a database connection until it is
+	 * closed, so it should always be used in a try-with-resources:
+	 * <pre>
+	 * try (Stream&lt;Item&gt; items = dao.streamAll()) {
+	 *     items.forEach(...);
+	 * }
+	 * </pre>
+	 * If the database fails while the stream is being consumed, a
+	 * {@link DataAccessException} is thrown. If the query cannot even
+	 * be started, the stream is simply empty.
+	 * @param fetchSize - the number of rows fetched at once
+	 * @return A lazily-populated stream of all the elements
+	 */
+	public Stream<T> streamAll(int fetchSize) {
+		if (null != memory) return memory.findAll().stream(); // Already in memory; nothing to hold open
+		
 		Connection connection = null;
 		PreparedStatement statement = null;
-		String query = createUpdateQuery("id"); // Update objects by id by default
+		ResultSet resultSet = null;
+		String query = selectAllQuery;
 		try {
 			connection = ConnectionFactory.getConnection();
-			statement = connection.prepareStatement(query);
+			// Not taken from the statement cache, since it stays busy for as long as the stream is open
+			statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			statement.setFetchSize(fetchSize);
+			resultSet = statement.executeQuery();
+		} catch (SQLException e) {
+			LOGGER.log(Level.WARNING, type.getName() + "DAO:streamAll " + e.getMessage());
+			ConnectionFactory.close(resultSet);
+			ConnectionFactory.close(statement);
+			ConnectionFactory.close(connection);
+			return Stream.empty();
+		}
+		
+		final Connection streamConnection = connection;
+		final PreparedStatement streamStatement = statement;
+		final ResultSet rows = resultSet;
+		Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+				Spliterator.ORDERED | Spliterator.NONNULL) {
+			private int[] columns; // Found with the first row
 			
-			// Fill in the fields
-			int currentIndex = 1;
-			try {
-				for (Field field : type.getDeclaredFields()) {
-					field.setAccessible(true);
-					Object fieldValue = field.get(t);
-					statement.setObject(currentIndex++, fieldValue);
+			public boolean tryAdvance(Consumer<? super T> action) {
+				try {
+					if (!rows.next()) return false;
+					if (null == columns) columns = meta.findColumns(rows);
+					action.accept(meta.mapRow(rows, columns));
+					return true;
+				} catch (SQLException e) {
+					throw new DataAccessException(type.getName() + "DAO:streamAll " + e.getMessage(), e);
 				}
-			} catch (SecurityException e) { // TODO: don't just catch everything and do nothing!
-				e.printStackTrace();
-			} catch (IllegalAccessException e) {
-				e.printStackTrace();
-			} catch (IllegalArgumentException e) {
-				e.printStackTrace();
-			}
-			
-			try {
-				PropertyDescriptor idDescr = new PropertyDescriptor("id", type); // We presume this field exists!!
-				Method getId = idDescr.getReadMethod();
-				Object id = getId.invoke(t);
-				statement.setObject(currentIndex, id);
-			} catch(IntrospectionException e) { // TODO: do something on catch!
-				e.printStackTrace();
-			} catch (IllegalAccessException e) {
-				e.printStackTrace();
-			} catch (IllegalArgumentException e) {
-				e.printStackTrace();
-			} catch (InvocationTargetException e) {
-				e.printStackTrace();
 			}
+		};
+		return StreamSupport.stream(spliterator, false).onClose(() -> {
+			ConnectionFactory.close(rows);
+			ConnectionFactory.close(streamStatement);
+			ConnectionFactory.close(streamConnection);
+		});
+	}
 
-			statement.executeUpdate();
+	/**
+	 * Finds at most limit elements whose id is greater than afterId,
+	 * in increasing order of id. Since the database seeks straight to
+	 * afterId through the primary key, every page costs the same no
+	 * matter how far into the table it is. To get the first page, use
+	 * an afterId of 0; to get the next one, use the id of the last
+	 * element of the current page.
+	 * @param afterId - the id right before the page (exclusive)
+	 * @param limit - the most elements to return
+	 * @return A list containing the page's elements, possibly empty
+	 */
+	public List<T> findPage(int afterId, int limit) {
+		return findPage(true, afterId, limit);
+	}
+	
+	/**
+	 * Finds at most limit elements whose id is less than beforeId,
+	 * that is, the page right before the one starting at beforeId.
+	 * The elements are still returned in increasing order of id.
+	 * To get the last page, use an beforeId of {@link Integer#MAX_VALUE}.
+	 * @param beforeId - the id right after the page (exclusive)
+	 * @param limit - the most elements to return
+	 * @return A list containing the page's elements, possibly empty
+	 */
+	public List<T> findPageBefore(int beforeId, int limit) {
+		return findPage(false, beforeId, limit);
+	}
+	
+	/**
+	 * Finds at most limit elements, starting with the one at the given
+	 * position in increasing order of id. Unlike {@link #findPage(int,
+	 * int)}, this needs no id to start from, so it can jump straight
+	 * into the middle of a table; but the database still steps over
+	 * the skipped rows, so the cost grows with the offset.
+	 * @param offset - the number of elements to skip (0 for the first page)
+	 * @param limit - the most elements to return
+	 * @return A list containing the page's elements, possibly empty
+	 */
+	public List<T> findPageAt(int offset, int limit) {
+		if (null != memory) return memory.findPageAt(offset, limit);
+		
+		Connection connection = null;
+		PreparedStatement statement = null;
+		ResultSet resultSet = null;
+		try (OperationTimer timer = time("findPageAt")) {
+			connection = ConnectionFactory.getConnection();
+			statement = ConnectionFactory.prepareStatement(connection, pageAtQuery);
+			statement.setInt(1, limit);
+			statement.setInt(2, offset);
+			resultSet = statement.executeQuery();
+
+			return timer.done(createObjects(resultSet));
 		} catch (SQLException e) {
-			LOGGER.log(Level.WARNING, type.getName() + "DAO:update " + e.getMessage());
+			LOGGER.log(Level.WARNING, type.getName() + "DAO:findPageAt " + e.getMessage());
 		} finally {
+			ConnectionFactory.close(resultSet);
 			ConnectionFactory.close(statement);
 			ConnectionFactory.close(connection);
 		}
-		
-		return t;
+		return null;
 	}
 	
 	/**
-	 * Deletes the given element from the database. Note that this
-	 * method assumes that an element with the same id as the one
-	 * received exists in the database.
-	 * @param t - the element to be deleted from the database
+	 * Finds the page right after (forward) or right before the given id.
 	 */
-	public void delete(T t) {
+	private List<T> findPage(boolean forward, int boundaryId, int limit) {
+		if (null != memory) {
+			return forward ? memory.findPage(boundaryId, limit)
+						   : memory.findPageBefore(boundaryId, limit);
+		}
+		
+		String query = forward ? pageAfterQuery : pageBeforeQuery;
+		String operation = forward ? "findPage" : "findPageBefore";
 		Connection connection = null;
 		PreparedStatement statement = null;
-		String query = createDeleteQuery("id"); // Delete objects by id by default
-		try {
+		ResultSet resultSet = null;
+		try (OperationTimer timer = time(operation)) {
 			connection = ConnectionFactory.getConnection();
-			statement = connection.prepareStatement(query);
-			
-			try {
-				PropertyDescriptor idDescr = new PropertyDescriptor("id", type); // We presume this field exists!!
-				Method getId = idDescr.getReadMethod();
-				Object id = getId.invoke(t);
-				statement.setObject(1, id);
-			} catch(IntrospectionException e) { // TODO: do something on catch!
-				e.printStackTrace();
-			} catch (IllegalAccessException e) {
-				e.printStackTrace();
-			} catch (IllegalArgumentException e) {
-				e.printStackTrace();
-			} catch (InvocationTargetException e) {
-				e.printStackTrace();
-			}
+			statement = ConnectionFactory.prepareStatement(connection, query);
+			statement.setInt(1, boundaryId);
+			statement.setInt(2, limit);
+			resultSet = statement.executeQuery();
 
-			statement.executeUpdate();
+			List<T> page = createObjects(resultSet);
+			if (!forward) Collections.reverse(page); // We read it backwards
+			return timer.done(page);
 		} catch (SQLException e) {
-			LOGGER.log(Level.WARNING, type.getName() + "DAO:delete " + e.getMessage());
+			LOGGER.log(Level.WARNING, type.getName() + "DAO:" + operation + " " + e.getMessage());
 		} finally {
+			ConnectionFactory.close(resultSet);
 			ConnectionFactory.close(statement);
 			ConnectionFactory.close(connection);
 		}
+		return null;
 	}
 
 	/**
-	 * Uses reflection to convert the {@link ResultSet} received into
-	 * a list of objects of the corresponding type.
-	 * @param resultSet - the ResultSet to be unpacked
-	 * @return A List of objects of the corresponding type
+	 * Finds an element of the corresponding type in the database
+	 * given its id. If no elements are found with the given id,
+	 * this method will return null.
+	 * @param id - the id of the element to be searched for
+	 * @return The element, if found, otherwise null
 	 */
-	protected List<T> createObjects(ResultSet resultSet) {
-		List<T> list = new ArrayList<T>();
+	public T findById(int id) {
+		if (null != memory) return memory.findById(id);
+		
+		Connection connection = null;
+		PreparedStatement statement = null;
+		ResultSet resultSet = null;
+		String query = createSelectQuery("id");
+		try (OperationTimer timer = time("findById")) {
+			connection = ConnectionFactory.getConnection();
+			statement = ConnectionFactory.prepareStatement(connection, query);
+			statement.setInt(1, id);
+			resultSet = statement.executeQuery();
 
-		try {
-			while (resultSet.next()) {
-				T instance = (T) type.newInstance(); // We get one warning here in exchange for lots of peace
-				for (Field field : type.getDeclaredFields()) {
-					Object value = resultSet.getObject(field.getName());
-					field.setAccessible(true);
-					field.set(instance, value);
-				}
-				list.add(instance);
-			}
-		} catch (InstantiationException e) {
-			e.printStackTrace();
-		} catch (IllegalAccessException e) {
-			e.printStackTrace();
-		} catch (SecurityException e) {
-			e.printStackTrace();
-		} catch (IllegalArgumentException e) {
-			e.printStackTrace();
+			List<T> elems = createObjects(resultSet);
+			return timer.done(elems.isEmpty() ? null : elems.get(0));
 		} catch (SQLException e) {
-			e.printStackTrace();
+			LOGGER.log(Level.WARNING, type.getName() + "DAO:findById " + e.getMessage());
+		} finally {
+			ConnectionFactory.close(resultSet);
+			ConnectionFactory.close(statement);
+			ConnectionFactory.close(connection);
 		}
-		return list;
+		return null;
+	}
+
+	/**
+	 * Finds an element given its id, as per {@link #findById(int)},
+	 * but only reads the columns of the given projection.
+	 * @param id - the id of the element to be searched for
+	 * @param projection - the columns to read, from {@link #projection(String...)}
+	 * @return The (partial) element, if found, otherwise null
+	 */
+	public T findById(int id, Projection<T> projection) {
+		if (null != memory) {
+			T t = memory.findById(id);
+			return null == t ? null : projection.copyOf(t);
+		}
+		
+		Connection connection = null;
+		PreparedStatement statement = null;
+		ResultSet resultSet = null;
+		String query = projection.selectByIdQuery();
+		try (OperationTimer timer = time("findByIdProjected")) {
+			connection = ConnectionFactory.getConnection();
+			statement = ConnectionFactory.prepareStatement(connection, query);
+			statement.setInt(1, id);
+			resultSet = statement.executeQuery();
+
+			List<T> elems = createObjects(resultSet, projection);
+			return timer.done(elems.isEmpty() ? null : elems.get(0));
+		} catch (SQLException e) {
+			LOGGER.log(Level.WARNING, type.getName() + "DAO:findById " + e.getMessage());
+		} finally {
+			ConnectionFactory.close(resultSet);
+			ConnectionFactory.close(statement);
+			ConnectionFactory.close(connection);
+		}
+		return null;
+	}
+
+	/**
+	 * Finds an element given its id, as part of the given transaction,
+	 * and locks it until the transaction ends, so that what was read
+	 * is still true when the transaction writes based on it.
+	 * @param tx - the transaction to take part in
+	 * @param id - the id of the element to be searched for
+	 * @return The element, if found, otherwise null
+	 * @throws SQLException if the query fails
+	 */
+	public T findById(Transaction tx, int id) throws SQLException {
+		if (null != memory) return memory.findById(id); // The transaction already holds the write lock
+		
+		PreparedStatement statement = null;
+		ResultSet resultSet = null;
+		try (OperationTimer timer = time("findByIdForUpdate")) {
+			statement = ConnectionFactory.prepareStatement(tx.getConnection(), lockByIdQuery);
+			statement.setInt(1, id);
+			resultSet = statement.executeQuery();
+			
+			return timer.done(resultSet.next() ? meta.mapRow(resultSet) : null);
+		} finally {
+			ConnectionFactory.close(resultSet);
+			ConnectionFactory.close(statement);
+		}
+	}
+
+	/**
+	 * Finds all the elements with the given ids in as few queries as
+	 * possible. Duplicate ids are only looked up once, and the ids are
+	 * sent in IN (...) lists of at most {@link #MAX_IN_LIST_SIZE}. Ids
+	 * that match no element are simply missing from the result.
+	 * @param ids - the ids of the elements to be searched for
+	 * @return A map from id to element, or null on failure
+	 */
+	public Map<Integer, T> findByIds(Collection<Integer> ids) {
+		return findByIds(ids, null, "findByIds");
+	}
+	
+	/**
+	 * Finds all the elements with the given ids, as per {@link
+	 * #findByIds(Collection)}, but only reads the columns of the
+	 * given projection.
+	 * @param ids - the ids of the elements to be searched for
+	 * @param projection - the columns to read, from {@link #projection(String...)}
+	 * @return A map from id to (partial) element, or null on failure
+	 */
+	public Map<Integer, T> findByIds(Collection<Integer> ids, Projection<T> projection) {
+		return findByIds(ids, projection, "findByIdsProjected");
+	}
+	
+	private Map<Integer, T> findByIds(Collection<Integer> ids, Projection<T> projection, String operation) {
+		Map<Integer, T> found = new HashMap<Integer, T>();
+		if (ids.isEmpty()) return found;
+		if (null != memory) {
+			found = memory.findByIds(ids);
+			if (null != projection) found.replaceAll((id, t) -> projection.copyOf(t));
+			return found;
+		}
+		
+		Integer[] unique = new LinkedHashSet<Integer>(ids).toArray(new Integer[0]);
+		Connection connection = null;
+		PreparedStatement statement = null;
+		ResultSet resultSet = null;
+		try (OperationTimer timer = time(operation)) {
+			connection = ConnectionFactory.getConnection();
+			for (int from = 0; from < unique.length; from += MAX_IN_LIST_SIZE) {
+				int count = Math.min(MAX_IN_LIST_SIZE, unique.length - from);
+				
+				// Round the list size up to a power of two, padding with a repeated id, so
+				// that only a handful of distinct queries are ever prepared (and cached)
+				int size = (1 == count) ? 1 : Math.min(MAX_IN_LIST_SIZE, Integer.highestOneBit(count - 1) << 1);
+				String query = (null == projection) ? createInListQuery(size) : projection.inListQuery(size);
+				statement = ConnectionFactory.prepareStatement(connection, query);
+				for (int i = 0; i < size; ++i) {
+					statement.setInt(i + 1, unique[from + Math.min(i, count - 1)]);
+				}
+				resultSet = statement.executeQuery();
+				
+				for (T t : (null == projection) ? createObjects(resultSet) : createObjects(resultSet, projection)) {
+					found.put(meta.getId(t), t);
+				}
+				ConnectionFactory.close(resultSet);
+				ConnectionFactory.close(statement);
+				resultSet = null;
+				statement = null;
+			}
+			return timer.done(found);
+		} catch (SQLException e) {
+			LOGGER.log(Level.WARNING, type.getName() + "DAO:" + operation + " " + e.getMessage());
+		} finally {
+			ConnectionFactory.close(resultSet);
+			ConnectionFactory.close(statement);
+			ConnectionFactory.close(connection);
+		}
+		return null;
+	}
+	
+	/**
+	 * Creates an SQL query of the type				<br>
+	 * <b>SELECT</b> * <b>FROM</b> &lt;table&gt;		<br>
+	 * <b>WHERE</b> id <b>IN</b> (?, ?, ...)			<br>
+	 * with the given number of question marks. The query
+	 * is only built the first time a given size is asked for.
+	 * @param size - the number of ids in the IN list
+	 * @return A String containing the SELECT query
+	 */
+	private String createInListQuery(int size) {
+		return inListQueries.computeIfAbsent(size, n -> {
+			StringBuilder sb = new StringBuilder();
+			sb.append("SELECT ");
+			sb.append(" * ");
+			sb.append(" FROM ");
+			sb.append("`" + type.getSimpleName() + "`");
+			
+			StringJoiner questionMarks = new StringJoiner(", ", " WHERE id IN (", ")");
+			for (int i = 0; i < n; ++i) {
+				questionMarks.add("?");
+			}
+			sb.append(questionMarks.toString());
+			return sb.toString();
+		});
+	}
+
+	/**
+	 * Inserts the given element into the database. This method will
+	 * update the element's id field so that it matches the one it
+	 * gained upon being inserted
+	 * @param t - the element to be inserted
+	 * @return The same element that was inserted (with updated id)
+	 */
+	public T insert(T t) {
+		if (null != memory) {
+			try {
+				memory.insert(t, null);
+			} catch (SQLException e) {
+				LOGGER.log(Level.WARNING, type.getName() + "DAO:insert " + e.getMessage());
+			}
+			return t;
+		}
+		
+		Connection connection = null;
+		try (OperationTimer timer = time("insert")) {
+			connection = ConnectionFactory.getConnection();
+			timer.done(insert(connection, t));
+		} catch (SQLException e) {
+			LOGGER.log(Level.WARNING, type.getName() + "DAO:insert " + e.getMessage());
+		} finally {
+			ConnectionFactory.close(connection);
+		}
+		
+		return t;
+	}
+	
+	/**
+	 * Inserts the given element as part of the given transaction,
+	 * as per {@link #insert(Object)}. Failures are thrown rather
+	 * than logged, so that the whole transaction is rolled back.
+	 * @param tx - the transaction to take part in
+	 * @param t - the element to be inserted
+	 * @return The same element that was inserted (with updated id)
+	 * @throws SQLException if the insert fails
+	 */
+	public T insert(Transaction tx, T t) throws SQLException {
+		if (null != memory) {
+			memory.insert(t, tx.getUndoLog());
+			return t;
+		}
+		try (OperationTimer timer = time("insert")) {
+			return timer.done(insert(tx.getConnection(), t));
+		}
+	}
+	
+	private T insert(Connection connection, T t) throws SQLException {
+		PreparedStatement statement = null;
+		ResultSet generatedKeys = null;
+		String query = createInsertQuery();
+		try {
+			statement = ConnectionFactory.prepareStatement(connection, query, Statement.RETURN_GENERATED_KEYS);
+			
+			// Fill in the fields
+			meta.bindColumns(statement, t, 1);
+			
+			statement.executeUpdate();
+			
+			// Update the id value, since it is auto-generated!
+			generatedKeys = statement.getGeneratedKeys();
+			generatedKeys.next();
+			meta.setId(t, (int) generatedKeys.getLong(1));
+			return t;
+		} finally {
+			ConnectionFactory.close(generatedKeys);
+			ConnectionFactory.close(statement);
+		}
+	}
+
+	/**
+	 * Updates the database version of the given element so that it
+	 * matches the one received as parameter. Note that this method
+	 * assumes that an element with the same id as the one received
+	 * exists in the database.
+	 * @param t - the element to be updated in the database
+	 * @return The same element that was updated
+	 */
+	public T update(T t) {
+		if (null != memory) {
+			memory.update(t, null);
+			return t;
+		}
+		
+		Connection connection = null;
+		try (OperationTimer timer = time("update")) {
+			connection = ConnectionFactory.getConnection();
+			timer.done(update(connection, t));
+		} catch (SQLException e) {
+			LOGGER.log(Level.WARNING, type.getName() + "DAO:update " + e.getMessage());
+		} finally {
+			ConnectionFactory.close(connection);
+		}
+		
+		return t;
+	}
+	
+	/**
+	 * Updates the given element as part of the given transaction,
+	 * as per {@link #update(Object)}. Failures are thrown rather
+	 * than logged, so that the whole transaction is rolled back.
+	 * @param tx - the transaction to take part in
+	 * @param t - the element to be updated in the database
+	 * @return Whether an element with that id was found
+	 * @throws SQLException if the update fails
+	 */
+	public boolean update(Transaction tx, T t) throws SQLException {
+		if (null != memory) return memory.update(t, tx.getUndoLog());
+		try (OperationTimer timer = time("update")) {
+			return 0 != timer.done(update(tx.getConnection(), t));
+		}
+	}
+	
+	private int update(Connection connection, T t) throws SQLException {
+		return update(connection, t, updatableColumns, createUpdateQuery("id")); // Update objects by id by default
+	}
+	
+	private int update(Connection connection, T t, int[] columns, String query) throws SQLException {
+		PreparedStatement statement = null;
+		try {
+			statement = ConnectionFactory.prepareStatement(connection, query);
+			bindUpdate(statement, t, columns);
+
+			return statement.executeUpdate();
+		} finally {
+			ConnectionFactory.close(statement);
+		}
+	}
+	
+	/**
+	 * Fills in an UPDATE statement: the given columns of the
+	 * element, then its id for the WHERE clause.
+	 */
+	private void bindUpdate(PreparedStatement statement, T t, int[] columns) throws SQLException {
+		int index = 1;
+		for (int column : columns) {
+			meta.bindColumn(statement, t, column, index++);
+		}
+		statement.setInt(index, meta.getId(t));
+	}
+	
+	/**
+	 * Updates only the given columns of the database version of the
+	 * given element, as per {@link #update(Object)}; the other columns
+	 * are left as they are in the database, even if someone else changed
+	 * them in the meantime. The id is never written, being what the
+	 * row is found by. If there is no other column to write, the
+	 * database is not touched at all.
+	 * @param t - the element to be updated in the database
+	 * @param columns - the names of the columns that changed
+	 * @return The same element that was updated
+	 * @throws IllegalArgumentException if the type has no such column
+	 * @throws DataAccessException if the database fails, so that
+	 * 		callers can put back what the element was before
+	 */
+	public T update(T t, Collection<String> columns) {
+		int[] changed = findColumns(columns);
+		if (0 == changed.length) return t; // Nothing changed, so nothing to write
+		if (null != memory) {
+			memory.update(meta.getId(t), stored -> true, stored -> copyColumns(t, stored, changed), null);
+			return t;
+		}
+		
+		Connection connection = null;
+		try (OperationTimer timer = time("updateColumns")) {
+			connection = ConnectionFactory.getConnection();
+			if(null == connection) {
+				throw new DataAccessException(type.getName() + "DAO:update could not get a connection", null);
+			}
+			timer.done(update(connection, t, changed, createUpdateQuery(changed)));
+		} catch (SQLException e) {
+			LOGGER.log(Level.WARNING, type.getName() + "DAO:update " + e.getMessage());
+			throw new DataAccessException(type.getName() + "DAO:update " + e.getMessage(), e);
+		} finally {
+			ConnectionFactory.close(connection);
+		}
+		
+		return t;
+	}
+	
+	/**
+	 * Updates only the given columns of the given element as part of
+	 * the given transaction, as per {@link #update(Object, Collection)}.
+	 * Failures are thrown rather than logged, so that the whole
+	 * transaction is rolled back.
+	 * @param tx - the transaction to take part in
+	 * @param t - the element to be updated in the database
+	 * @param columns - the names of the columns that changed
+	 * @return Whether an element with that id was found and written;
+	 * 		false if there was nothing to write
+	 * @throws SQLException if the update fails
+	 * @throws IllegalArgumentException if the type has no such column
+	 */
+	public boolean update(Transaction tx, T t, Collection<String> columns) throws SQLException {
+		int[] changed = findColumns(columns);
+		if (0 == changed.length) return false;
+		if (null != memory) {
+			return memory.update(meta.getId(t), stored -> true, stored -> copyColumns(t, stored, changed), tx.getUndoLog());
+		}
+		try (OperationTimer timer = time("updateColumns")) {
+			return 0 != timer.done(update(tx.getConnection(), t, changed, createUpdateQuery(changed)));
+		}
+	}
+	
+	/**
+	 * Finds the indexes of the given columns, leaving out the id,
+	 * in increasing order, so that the same columns always give
+	 * the same (cached) query.
+	 */
+	private int[] findColumns(Collection<String> names) {
+		List<String> all = meta.getColumns();
+		boolean[] wanted = new boolean[all.size()];
+		int count = 0;
+		for (String name : names) {
+			int column = all.indexOf(name);
+			if (-1 == column) {
+				throw new IllegalArgumentException(meta.getTableName() + " has no column " + name);
+			}
+			if (column != meta.getIdIndex() && !wanted[column]) {
+				wanted[column] = true;
+				++count;
+			}
+		}
+		int[] columns = new int[count];
+		for (int i = 0, n = 0; i < wanted.length; ++i) {
+			if (wanted[i]) columns[n++] = i;
+		}
+		return columns;
+	}
+	
+	private void copyColumns(T from, T to, int[] columns) {
+		for (int column : columns) {
+			meta.set(to, column, meta.get(from, column));
+		}
+	}
+	
+	/**
+	 * Deletes the given element from the database. Note that this
+	 * method assumes that an element with the same id as the one
+	 * received exists in the database.
+	 * @param t - the element to be deleted from the database
+	 */
+	public void delete(T t) {
+		if (null != memory) {
+			memory.delete(meta.getId(t), null);
+			return;
+		}
+		
+		Connection connection = null;
+		try (OperationTimer timer = time("delete")) {
+			connection = ConnectionFactory.getConnection();
+			timer.done(delete(connection, t));
+		} catch (SQLException e) {
+			LOGGER.log(Level.WARNING, type.getName() + "DAO:delete " + e.getMessage());
+		} finally {
+			ConnectionFactory.close(connection);
+		}
+	}
+	
+	/**
+	 * Deletes the given element as part of the given transaction,
+	 * as per {@link #delete(Object)}. Failures are thrown rather
+	 * than logged, so that the whole transaction is rolled back.
+	 * @param tx - the transaction to take part in
+	 * @param t - the element to be deleted from the database
+	 * @return Whether an element with that id was found (and deleted)
+	 * @throws SQLException if the delete fails
+	 */
+	public boolean delete(Transaction tx, T t) throws SQLException {
+		if (null != memory) return memory.delete(meta.getId(t), tx.getUndoLog());
+		try (OperationTimer timer = time("delete")) {
+			return 0 != timer.done(delete(tx.getConnection(), t));
+		}
+	}
+	
+	private int delete(Connection connection, T t) throws SQLException {
+		PreparedStatement statement = null;
+		String query = createDeleteQuery("id"); // Delete objects by id by default
+		try {
+			statement = ConnectionFactory.prepareStatement(connection, query);
+			
+			statement.setInt(1, meta.getId(t));
+
+			return statement.executeUpdate();
+		} finally {
+			ConnectionFactory.close(statement);
+		}
+	}
+
+	/**
+	 * Inserts all the given elements into the database, as per
+	 * {@link #insertAll(List, int)}, using {@link #DEFAULT_BATCH_SIZE}.
+	 * @param ts - the elements to be inserted
+	 * @return The same list (with updated ids), or null on failure
+	 */
+	public List<T> insertAll(List<T> ts) {
+		return insertAll(ts, DEFAULT_BATCH_SIZE);
+	}
+	
+	/**
+	 * Inserts all the given elements into the database, in a single
+	 * transaction, sending them in JDBC batches of at most batchSize
+	 * rows. Just like {@link #insert(Object)}, this method updates
+	 * each element's id to the one it gained upon being inserted.
+	 * If anything fails, nothing is inserted, the elements keep
+	 * their old ids and the method returns null.
+	 * @param ts - the elements to be inserted
+	 * @param batchSize - the most rows sent in one round trip
+	 * @return The same list (with updated ids), or null on failure
+	 * @throws IllegalArgumentException if batchSize is not positive
+	 */
+	public List<T> insertAll(List<T> ts, int batchSize) {
+		checkBatchSize(batchSize);
+		if (ts.isEmpty()) return ts;
+		
+		if (null != memory) {
+			try {
+				memory.insertAll(ts, null); // All or nothing, just like the transaction below
+				return ts;
+			} catch (SQLException e) {
+				LOGGER.log(Level.WARNING, type.getName() + "DAO:insertAll " + e.getMessage());
+				return null;
+			}
+		}
+		
+		Connection connection = null;
+		try (OperationTimer timer = time("insertAll")) {
+			connection = ConnectionFactory.getConnection();
+			connection.setAutoCommit(false);
+			insertAll(connection, ts, batchSize);
+			connection.commit();
+			return timer.done(ts);
+		} catch (SQLException e) {
+			rollback(connection);
+			LOGGER.log(Level.WARNING, type.getName() + "DAO:insertAll " + e.getMessage());
+		} finally {
+			ConnectionFactory.close(connection);
+		}
+		return null;
+	}
+	
+	/**
+	 * Inserts all the given elements as part of the given transaction,
+	 * as per {@link #insertAll(List, int)}, using {@link #DEFAULT_BATCH_SIZE}.
+	 * Failures are thrown rather than logged, so that the whole
+	 * transaction is rolled back; the elements then keep their old ids.
+	 * @param tx - the transaction to take part in
+	 * @param ts - the elements to be inserted
+	 * @return The same list (with updated ids)
+	 * @throws SQLException if any insert fails
+	 */
+	public List<T> insertAll(Transaction tx, List<T> ts) throws SQLException {
+		if (ts.isEmpty()) return ts;
+		if (null != memory) {
+			memory.insertAll(ts, tx.getUndoLog());
+			return ts;
+		}
+		try (OperationTimer timer = time("insertAll")) {
+			return timer.done(insertAll(tx.getConnection(), ts, DEFAULT_BATCH_SIZE));
+		}
+	}
+	
+	/**
+	 * Rejects a batch size that would never let the batch loops
+	 * move past their first row.
+	 * @param batchSize - the batch size received
+	 * @throws IllegalArgumentException if batchSize is not positive
+	 */
+	private static void checkBatchSize(int batchSize) {
+		if (batchSize <= 0) throw new IllegalArgumentException("Batch size must be positive, was " + batchSize);
+	}
+	
+	private List<T> insertAll(Connection connection, List<T> ts, int batchSize) throws SQLException {
+		PreparedStatement statement = null;
+		ResultSet generatedKeys = null;
+		String query = createInsertQuery();
+		int[] oldIds = new int[ts.size()]; // In case we have to roll back
+		for (int i = 0; i < ts.size(); ++i) {
+			oldIds[i] = meta.getId(ts.get(i));
+		}
+		try {
+			statement = ConnectionFactory.prepareStatement(connection, query, Statement.RETURN_GENERATED_KEYS);
+			
+			for (int from = 0; from < ts.size(); from += batchSize) {
+				int to = Math.min(from + batchSize, ts.size());
+				for (int i = from; i < to; ++i) {
+					meta.bindColumns(statement, ts.get(i), 1);
+					statement.addBatch();
+				}
+				statement.executeBatch();
+				
+				// Update the id values, in the same order as the rows were sent
+				generatedKeys = statement.getGeneratedKeys();
+				for (int i = from; i < to && generatedKeys.next(); ++i) {
+					meta.setId(ts.get(i), (int) generatedKeys.getLong(1));
+				}
+				ConnectionFactory.close(generatedKeys);
+				generatedKeys = null;
+			}
+			return ts;
+		} catch (SQLException e) {
+			for (int i = 0; i < ts.size(); ++i) {
+				meta.setId(ts.get(i), oldIds[i]);
+			}
+			throw e;
+		} finally {
+			ConnectionFactory.close(generatedKeys);
+			ConnectionFactory.close(statement);
+		}
+	}
+	
+	/**
+	 * Updates all the given elements, as per {@link #updateAll(List, int)},
+	 * using {@link #DEFAULT_BATCH_SIZE}.
+	 * @param ts - the elements to be updated in the database
+	 * @return The same list, or null on failure
+	 */
+	public List<T> updateAll(List<T> ts) {
+		return updateAll(ts, DEFAULT_BATCH_SIZE);
+	}
+	
+	/**
+	 * Updates the database versions of all the given elements, in a
+	 * single transaction, sending them in JDBC batches of at most
+	 * batchSize rows. As with {@link #update(Object)}, elements are
+	 * matched by id. If anything fails, nothing is updated and the
+	 * method returns null.
+	 * @param ts - the elements to be updated in the database
+	 * @param batchSize - the most rows sent in one round trip
+	 * @return The same list, or null on failure
+	 * @throws IllegalArgumentException if batchSize is not positive
+	 */
+	public List<T> updateAll(List<T> ts, int batchSize) {
+		checkBatchSize(batchSize);
+		if (ts.isEmpty()) return ts;
+		if (null != memory) {
+			Transaction.execute(tx -> { // One transaction, so that readers never see half of it
+				for (T t : ts) {
+					memory.update(t, tx.getUndoLog());
+				}
+				return null;
+			});
+			return ts;
+		}
+		
+		Connection connection = null;
+		PreparedStatement statement = null;
+		String query = createUpdateQuery("id");
+		try (OperationTimer timer = time("updateAll")) {
+			connection = ConnectionFactory.getConnection();
+			connection.setAutoCommit(false);
+			statement = ConnectionFactory.prepareStatement(connection, query);
+			
+			for (int from = 0; from < ts.size(); from += batchSize) {
+				int to = Math.min(from + batchSize, ts.size());
+				for (int i = from; i < to; ++i) {
+					bindUpdate(statement, ts.get(i), updatableColumns);
+					statement.addBatch();
+				}
+				statement.executeBatch();
+			}
+			
+			connection.commit();
+			return timer.done(ts);
+		} catch (SQLException e) {
+			rollback(connection);
+			LOGGER.log(Level.WARNING, type.getName() + "DAO:updateAll " + e.getMessage());
+		} finally {
+			ConnectionFactory.close(statement);
+			ConnectionFactory.close(connection);
+		}
+		return null;
+	}
+	
+	/**
+	 * Deletes all the given elements, as per {@link #deleteAll(List, int)},
+	 * using {@link #DEFAULT_BATCH_SIZE}.
+	 * @param ts - the elements to be deleted from the database
+	 * @return Whether the elements were deleted
+	 */
+	public boolean deleteAll(List<T> ts) {
+		return deleteAll(ts, DEFAULT_BATCH_SIZE);
+	}
+	
+	/**
+	 * Deletes all the given elements from the database, in a single
+	 * transaction, sending them in JDBC batches of at most batchSize
+	 * rows. As with {@link #delete(Object)}, elements are matched by id.
+	 * If anything fails, nothing is deleted.
+	 * @param ts - the elements to be deleted from the database
+	 * @param batchSize - the most rows sent in one round trip
+	 * @return Whether the elements were deleted
+	 * @throws IllegalArgumentException if batchSize is not positive
+	 */
+	public boolean deleteAll(List<T> ts, int batchSize) {
+		checkBatchSize(batchSize);
+		if (ts.isEmpty()) return true;
+		if (null != memory) {
+			Transaction.execute(tx -> { // One transaction, so that readers never see half of it
+				for (T t : ts) {
+					memory.delete(meta.getId(t), tx.getUndoLog());
+				}
+				return null;
+			});
+			return true;
+		}
+		
+		Connection connection = null;
+		PreparedStatement statement = null;
+		String query = createDeleteQuery("id");
+		try (OperationTimer timer = time("deleteAll")) {
+			connection = ConnectionFactory.getConnection();
+			connection.setAutoCommit(false);
+			statement = ConnectionFactory.prepareStatement(connection, query);
+			
+			for (int from = 0; from < ts.size(); from += batchSize) {
+				int to = Math.min(from + batchSize, ts.size());
+				for (int i = from; i < to; ++i) {
+					statement.setInt(1, meta.getId(ts.get(i)));
+					statement.addBatch();
+				}
+				statement.executeBatch();
+			}
+			
+			connection.commit();
+			timer.done(ts);
+			return true;
+		} catch (SQLException e) {
+			rollback(connection);
+			LOGGER.log(Level.WARNING, type.getName() + "DAO:deleteAll " + e.getMessage());
+		} finally {
+			ConnectionFactory.close(statement);
+			ConnectionFactory.close(connection);
+		}
+		return false;
+	}
+	
+	/**
+	 * Rolls back the current transaction of the given connection,
+	 * if there is one.
+	 * @param connection - the connection to roll back
+	 */
+	protected static void rollback(Connection connection) {
+		if (null == connection) return;
+		try {
+			connection.rollback();
+		} catch (SQLException e) {
+			LOGGER.log(Level.WARNING, "An error occured while trying to roll back: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Runs the given UPDATE / INSERT / DELETE statement, with the
+	 * given int parameters, as part of the given transaction. Meant
+	 * for subclasses' custom writes (e.g. conditional updates), whose
+	 * outcome is told by the number of rows they touched.
+	 * @param tx - the transaction to take part in
+	 * @param query - the statement to run
+	 * @param params - the values of the statement's parameters, in order
+	 * @return The number of rows affected
+	 * @throws SQLException if the statement fails
+	 */
+	protected int executeUpdate(Transaction tx, String query, int... params) throws SQLException {
+		if (null != memory) throw new IllegalStateException(getClass().getSimpleName() + " has no in-memory version of " + query);
+		
+		PreparedStatement statement = null;
+		try {
+			statement = ConnectionFactory.prepareStatement(tx.getConnection(), query);
+			for (int i = 0; i < params.length; ++i) {
+				statement.setInt(i + 1, params[i]);
+			}
+			return statement.executeUpdate();
+		} finally {
+			ConnectionFactory.close(statement);
+		}
+	}
+
+	/**
+	 * Runs the given query, with the given int parameters, and
+	 * converts its rows into objects of the type described by the
+	 * given metadata. Meant for subclasses' custom read queries
+	 * (joins, aggregates) whose rows are not of this DAO's own type.
+	 * @param query - the SELECT query to run
+	 * @param rowMeta - the metadata of the type to convert to
+	 * @param operation - the name of the calling operation, for logging and metrics
+	 * @param params - the values of the query's parameters, in order
+	 * @return A List of objects of that type, or null on failure
+	 */
+	protected <R> List<R> findRows(String query, EntityMetadata<R> rowMeta, String operation, int... params) {
+		if (null != memory) throw new IllegalStateException(getClass().getSimpleName() + " has no in-memory version of " + query);
+		
+		Connection connection = null;
+		PreparedStatement statement = null;
+		ResultSet resultSet = null;
+		try (OperationTimer timer = time(operation)) {
+			connection = ConnectionFactory.getConnection();
+			statement = ConnectionFactory.prepareStatement(connection, query);
+			for (int i = 0; i < params.length; ++i) {
+				statement.setInt(i + 1, params[i]);
+			}
+			resultSet = statement.executeQuery();
+
+			return timer.done(createObjects(resultSet, rowMeta));
+		} catch (SQLException e) {
+			LOGGER.log(Level.WARNING, getClass().getSimpleName() + ":" + operation + " " + e.getMessage());
+		} finally {
+			ConnectionFactory.close(resultSet);
+			ConnectionFactory.close(statement);
+			ConnectionFactory.close(connection);
+		}
+		return null;
+	}
+
+	/**
+	 * Converts the {@link ResultSet} received into a list of objects
+	 * of the corresponding type, using the type's pre-computed
+	 * {@link EntityMetadata} rather than per-row reflection.
+	 * @param resultSet - the ResultSet to be unpacked
+	 * @return A List of objects of the corresponding type
+	 */
+	protected List<T> createObjects(ResultSet resultSet) {
+		return createObjects(resultSet, meta);
+	}
+	
+	/**
+	 * Converts the {@link ResultSet} received into a list of objects
+	 * of the type described by the given metadata. Useful for queries
+	 * whose rows are not of this DAO's own type (e.g. aggregates); the
+	 * ResultSet needs a column for every field of that type.
+	 * @param resultSet - the ResultSet to be unpacked
+	 * @param rowMeta - the metadata of the type to convert to
+	 * @return A List of objects of that type
+	 */
+	protected <R> List<R> createObjects(ResultSet resultSet, EntityMetadata<R> rowMeta) {
+		List<R> list = new ArrayList<R>();
+
+		try {
+			int[] columns = rowMeta.findColumns(resultSet); // Once, rather than by name on every row
+			while (resultSet.next()) {
+				list.add(rowMeta.mapRow(resultSet, columns));
+			}
+		} catch (IllegalStateException e) { // Thrown by the metadata when a value does not fit
+			e.printStackTrace();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return list;
+	}
+	
+	/**
+	 * Converts the {@link ResultSet} received into a list of partial
+	 * objects of the corresponding type, reading only the columns of
+	 * the given projection (which are all the ResultSet needs).
+	 * @param resultSet - the ResultSet to be unpacked
+	 * @param projection - the columns to read
+	 * @return A List of (partial) objects of the corresponding type
+	 */
+	protected List<T> createObjects(ResultSet resultSet, Projection<T> projection) {
+		List<T> list = new ArrayList<T>();
+
+		try {
+			int[] columns = projection.findColumns(resultSet); // 0 for the columns left out
+			while (resultSet.next()) {
+				list.add(meta.mapRow(resultSet, columns));
+			}
+		} catch (IllegalStateException e) {
+			e.printStackTrace();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return list;
+	}
+	
+	private static <T> List<T> project(List<T> ts, Projection<T> projection) {
+		List<T> partial = new ArrayList<T>(ts.size());
+		for (T t : ts) {
+			partial.add(projection.copyOf(t));
+		}
+		return partial;
 	}
 }
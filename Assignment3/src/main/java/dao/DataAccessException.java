@@ -0,0 +1,14 @@
+package dao;
+
+/**
+ * Thrown when the database fails in the middle of an operation
+ * that cannot simply report the failure through its return value
+ * (for example, while a stream of rows is being consumed).
+ */
+public class DataAccessException extends RuntimeException {
+	private static final long serialVersionUID = 4815398870325021217L;
+
+	public DataAccessException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,258 @@
+package dao;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import mapper.GenerateMapper;
+import mapper.RowMapper;
+
+/**
+ * Everything {@link AbstractDAO} needs to know about an entity
+ * class, worked out once per class and then re-used for every row.
+ * Columns are the declared (non-static, non-synthetic) fields of the
+ * class, in declaration order, and the table is named after the class
+ * itself.
+ * <br>
+ * The actual mapping is done by the class's {@link RowMapper}: the one
+ * generated at compile time if the class is marked with
+ * {@link GenerateMapper}, so that no reflection is involved, and one
+ * built by reflection otherwise.
+ * <br>
+ * Instances are immutable and shared; obtain them through
+ * {@link #forType(Class)}.
+ * @param <T> - the entity class described
+ */
+public final class EntityMetadata<T> {
+	private static final ConcurrentMap<Class<?>, EntityMetadata<?>> CACHE = new ConcurrentHashMap<Class<?>, EntityMetadata<?>>();
+
+	private final Class<T> type;
+	private final String tableName;
+	private final RowMapper<T> mapper;
+	private final boolean generated;
+	private final String[] columns;
+	private final Class<?>[] columnTypes;
+	private final int idIndex;
+
+	/**
+	 * Returns the (cached) metadata for the given entity class,
+	 * building it on first use.
+	 * @param type - the entity class
+	 * @return The EntityMetadata describing that class
+	 * @throws IllegalArgumentException if the class has no no-argument
+	 * 		constructor or no <i>int id</i> field
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> EntityMetadata<T> forType(Class<T> type) {
+		EntityMetadata<?> meta = CACHE.get(type);
+		if(null == meta) {
+			meta = new EntityMetadata<T>(type);
+			EntityMetadata<?> raced = CACHE.putIfAbsent(type, meta);
+			if(null != raced) meta = raced;
+		}
+		return (EntityMetadata<T>) meta;
+	}
+
+	private EntityMetadata(Class<T> type) {
+		this.type = type;
+		this.tableName = type.getSimpleName();
+
+		RowMapper<T> found = findGeneratedMapper(type);
+		this.generated = (null != found);
+		this.mapper = generated ? found : new ReflectiveRowMapper<T>(type);
+		this.columns = mapper.columns();
+		this.columnTypes = mapper.columnTypes();
+		this.idIndex = mapper.idIndex();
+	}
+
+	/**
+	 * Loads the mapper generated for the given class, if there is one.
+	 * This is the only reflection a class with a generated mapper needs.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> RowMapper<T> findGeneratedMapper(Class<T> type) {
+		try {
+			Class<?> mapperClass = Class.forName(type.getName() + RowMapper.SUFFIX, true, type.getClassLoader());
+			return (RowMapper<T>) mapperClass.getDeclaredConstructor().newInstance();
+		} catch (ClassNotFoundException e) {
+			return null; // Not marked with @GenerateMapper
+		} catch (ReflectiveOperationException | ClassCastException e) {
+			throw new IllegalArgumentException("The mapper generated for " + type.getName() + " is unusable", e);
+		}
+	}
+
+	/**
+	 * Returns the entity class described by this metadata.
+	 * @return A class
+	 */
+	public Class<T> getType() {
+		return type;
+	}
+
+	/**
+	 * Tells whether this class is mapped by a mapper generated at
+	 * compile time, rather than by reflection.
+	 * @return True if the class is marked with {@link GenerateMapper}
+	 */
+	public boolean hasGeneratedMapper() {
+		return generated;
+	}
+
+	/**
+	 * Returns the name of the table the entities are stored in.
+	 * @return A table name (unquoted)
+	 */
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * Returns the column names, in the order used by
+	 * {@link #bindColumns(PreparedStatement, Object, int)}.
+	 * @return An unmodifiable list of column names
+	 */
+	public List<String> getColumns() {
+		return Collections.unmodifiableList(Arrays.asList(columns));
+	}
+
+	/**
+	 * Returns the number of columns of the entity.
+	 * @return The column count
+	 */
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	/**
+	 * Returns the Java type of the given column.
+	 * @param column - a column index, as per {@link #getColumns()}
+	 * @return The declared type of the matching field
+	 */
+	public Class<?> getColumnType(int column) {
+		return columnTypes[column];
+	}
+
+	/**
+	 * Returns the index of the <i>id</i> column.
+	 * @return A column index, as per {@link #getColumns()}
+	 */
+	public int getIdIndex() {
+		return idIndex;
+	}
+
+	/**
+	 * Creates a new, empty entity.
+	 * @return A new instance of the entity class
+	 */
+	public T newInstance() {
+		return mapper.newInstance();
+	}
+
+	/**
+	 * Reads the value of one column from the given entity.
+	 * @param t - the entity
+	 * @param column - a column index, as per {@link #getColumns()}
+	 * @return The (boxed) value of that column
+	 */
+	public Object get(T t, int column) {
+		return mapper.get(t, column);
+	}
+
+	/**
+	 * Writes the value of one column into the given entity.
+	 * Numbers are converted to the field's primitive type if
+	 * needed, and null leaves primitives at their default.
+	 * @param t - the entity
+	 * @param column - a column index, as per {@link #getColumns()}
+	 * @param value - the new value
+	 */
+	public void set(T t, int column, Object value) {
+		mapper.set(t, column, value);
+	}
+
+	/**
+	 * Returns the id of the given entity.
+	 * @param t - the entity
+	 * @return Its id
+	 */
+	public int getId(T t) {
+		return mapper.getId(t);
+	}
+
+	/**
+	 * Sets the id of the given entity.
+	 * @param t - the entity
+	 * @param id - the new id
+	 */
+	public void setId(T t, int id) {
+		mapper.setId(t, id);
+	}
+
+	/**
+	 * Finds where each column of the entity is in the given ResultSet,
+	 * once, so that its rows can then be read by index rather than by
+	 * name through {@link #mapRow(ResultSet, int[])}.
+	 * @param resultSet - a ResultSet with a column for every column of the entity
+	 * @return The ResultSet index of every column, in column order
+	 * @throws SQLException if a column is missing from the ResultSet
+	 */
+	public int[] findColumns(ResultSet resultSet) throws SQLException {
+		return mapper.findColumns(resultSet);
+	}
+
+	/**
+	 * Builds an entity from the current row of the given ResultSet,
+	 * reading each column by index, with the getter of its type.
+	 * Columns with an index of 0 are skipped (see {@link Projection}).
+	 * @param resultSet - a ResultSet positioned on a row
+	 * @param indexes - where the columns are, as per {@link #findColumns(ResultSet)}
+	 * @return A new entity holding that row's data
+	 * @throws SQLException if the ResultSet cannot be read
+	 */
+	public T mapRow(ResultSet resultSet, int[] indexes) throws SQLException {
+		return mapper.mapRow(resultSet, indexes);
+	}
+
+	/**
+	 * Builds an entity from the current row of the given ResultSet.
+	 * The ResultSet must have a column for every column of the entity.
+	 * Meant for single rows; for more, see {@link #mapRow(ResultSet, int[])}.
+	 * @param resultSet - a ResultSet positioned on a row
+	 * @return A new entity holding that row's data
+	 * @throws SQLException if the ResultSet cannot be read
+	 */
+	public T mapRow(ResultSet resultSet) throws SQLException {
+		return mapper.mapRow(resultSet);
+	}
+
+	/**
+	 * Binds every column of the given entity, in column order,
+	 * as parameters of the given statement.
+	 * @param statement - the statement to fill in
+	 * @param t - the entity to take the values from
+	 * @param firstIndex - the parameter index of the first column
+	 * @return The index of the first parameter after the columns
+	 * @throws SQLException if a parameter cannot be set
+	 */
+	public int bindColumns(PreparedStatement statement, T t, int firstIndex) throws SQLException {
+		return mapper.bindColumns(statement, t, firstIndex);
+	}
+
+	/**
+	 * Binds one column of the given entity as a parameter
+	 * of the given statement, with the setter of its type.
+	 * @param statement - the statement to fill in
+	 * @param t - the entity to take the value from
+	 * @param column - a column index, as per {@link #getColumns()}
+	 * @param index - the parameter index to bind it to
+	 * @throws SQLException if the parameter cannot be set
+	 */
+	public void bindColumn(PreparedStatement statement, T t, int column, int index) throws SQLException {
+		mapper.bindColumn(statement, t, column, index);
+	}
+}
@@ -8,9 +8,17 @@ import java.util.List;
 import java.util.logging.Level;
 
 import connection.ConnectionFactory;
+import dao.memory.MemoryTable;
+import metrics.OperationTimer;
 import model.Item;
 
 public class ItemDAO extends AbstractDAO<Item> {
+	// Only takes the stock if there is enough of it; the row count tells whether it did
+	private static final String DECREMENT_STOCK_QUERY =
+			"UPDATE `Item` SET stock = stock - ? WHERE id = ? AND stock >= ?";
+	private static final String INCREMENT_STOCK_QUERY =
+			"UPDATE `Item` SET stock = stock + ? WHERE id = ?";
+
 	public ItemDAO() {
 		super(Item.class);
 	}
@@ -25,18 +33,24 @@ public class ItemDAO extends AbstractDAO<Item> {
 	 * @return The item, if found, otherwise null
 	 */
 	public Item findByName(String name) {
+		MemoryTable<Item> memory = getMemoryTable();
+		if(null != memory) {
+			List<Item> items = memory.findBy("name", name);
+			return items.isEmpty() ? null : items.get(0);
+		}
+		
 		Connection connection = null;
 		PreparedStatement statement = null;
 		ResultSet resultSet = null;
 		String query = createSelectQuery("name");
-		try {
+		try (OperationTimer timer = time("findByName")) {
 			connection = ConnectionFactory.getConnection();
-			statement = connection.prepareStatement(query);
+			statement = ConnectionFactory.prepareStatement(connection, query);
 			statement.setString(1, name);
 			resultSet = statement.executeQuery();
 
 			List<Item> items = createObjects(resultSet);
-			return items.isEmpty() ? null : items.get(0);
+			return timer.done(items.isEmpty() ? null : items.get(0));
 		} catch (SQLException e) {
 			LOGGER.log(Level.WARNING, "ItemDAO:findByName " + e.getMessage());
 		} finally {
@@ -46,4 +60,87 @@ public class ItemDAO extends AbstractDAO<Item> {
 		}
 		return null;
 	}
+
+	/**
+	 * Takes the given amount out of an Item's stock, as part of the
+	 * given transaction, but only if there is enough of it. The check
+	 * and the write are a single statement, so two clerks can never
+	 * both take the last units of an Item.
+	 * @param tx - the transaction to take part in
+	 * @param id - the id of the Item
+	 * @param amount - how much to take out of stock
+	 * @return True if the stock was decremented, false if the
+	 * 		   Item does not exist or does not have enough stock
+	 * @throws SQLException if the update fails
+	 */
+	public boolean decrementStock(Transaction tx, int id, int amount) throws SQLException {
+		MemoryTable<Item> memory = getMemoryTable();
+		if(null != memory) {
+			return memory.update(id, i -> i.getStock() >= amount,
+								 i -> i.setStock(i.getStock() - amount), tx.getUndoLog());
+		}
+		return 0 != executeUpdate(tx, DECREMENT_STOCK_QUERY, amount, id, amount);
+	}
+
+	/**
+	 * Puts the given amount back into an Item's stock, as part
+	 * of the given transaction.
+	 * @param tx - the transaction to take part in
+	 * @param id - the id of the Item
+	 * @param amount - how much to put back into stock
+	 * @return True if the stock was incremented, false if
+	 * 		   the Item does not exist
+	 * @throws SQLException if the update fails
+	 */
+	public boolean incrementStock(Transaction tx, int id, int amount) throws SQLException {
+		MemoryTable<Item> memory = getMemoryTable();
+		if(null != memory) {
+			return memory.update(id, i -> true, i -> i.setStock(i.getStock() + amount), tx.getUndoLog());
+		}
+		return 0 != executeUpdate(tx, INCREMENT_STOCK_QUERY, amount, id);
+	}
+
+	/**
+	 * Takes the given amounts out of the stock of the given Items, as
+	 * part of the given transaction, as per {@link #decrementStock(Transaction,
+	 * int, int)}. All the decrements are sent to the database in JDBC
+	 * batches, so the number of round trips barely grows with the
+	 * number of Items. The caller should roll the transaction back if
+	 * any Item did not have enough stock.
+	 * @param tx - the transaction to take part in
+	 * @param ids - the ids of the Items
+	 * @param amounts - how much to take out of each Item's stock
+	 * @return The index of the first Item that did not have enough
+	 * 		   stock (or does not exist), or -1 if all the stock was taken
+	 * @throws SQLException if the update fails
+	 */
+	public int decrementStock(Transaction tx, int[] ids, int[] amounts) throws SQLException {
+		if(null != getMemoryTable()) { // No round trips to save
+			for(int i = 0; i < ids.length; ++i) {
+				if(!decrementStock(tx, ids[i], amounts[i])) return i;
+			}
+			return -1;
+		}
+		
+		PreparedStatement statement = null;
+		try {
+			statement = ConnectionFactory.prepareStatement(tx.getConnection(), DECREMENT_STOCK_QUERY);
+			for (int from = 0; from < ids.length; from += DEFAULT_BATCH_SIZE) {
+				int to = Math.min(from + DEFAULT_BATCH_SIZE, ids.length);
+				for (int i = from; i < to; ++i) {
+					statement.setInt(1, amounts[i]);
+					statement.setInt(2, ids[i]);
+					statement.setInt(3, amounts[i]);
+					statement.addBatch();
+				}
+				int[] counts = statement.executeBatch();
+				for (int i = 0; i < counts.length; ++i) {
+					if (0 == counts[i]) return from + i; // SUCCESS_NO_INFO still means it went through
+				}
+			}
+			return -1;
+		} finally {
+			ConnectionFactory.close(statement);
+		}
+	}
 }
@@ -1,20 +1,65 @@
 package dao;
 
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.TreeSet;
 import java.util.logging.Level;
 
 import connection.ConnectionFactory;
+import dao.memory.MemoryDatabase;
+import dao.memory.MemoryTable;
+import metrics.OperationTimer;
+import model.Item;
 import model.Order;
+import model.OrderItem;
+import model.OrderSummary;
 
 public class OrderDAO extends AbstractDAO<Order> {
+	// Every order, with its item count and total price worked out from its lines; used to check the stored totals
+	private static final String SUMMARY_SELECT =
+			"SELECT o.id, o.user_id, "
+		  + "COALESCE(SUM(oi.amount), 0) AS noOfItems, "
+		  + "SUM(oi.amount * i.price) AS totalPrice "
+		  + "FROM `Order` o "
+		  + "LEFT JOIN `OrderItem` oi ON oi.order_id = o.id "
+		  + "LEFT JOIN `Item` i ON i.id = oi.item_id ";
+	private static final String SUMMARY_GROUP = "GROUP BY o.id, o.user_id ";
+
+	private static final String SUMMARY_ALL_QUERY = SUMMARY_SELECT + SUMMARY_GROUP;
+	private static final String SUMMARY_BY_ID_QUERY = SUMMARY_SELECT + "WHERE o.id = ? " + SUMMARY_GROUP;
+	private static final String SUMMARY_PAGE_AFTER_QUERY = SUMMARY_SELECT + "WHERE o.id > ? "
+														 + SUMMARY_GROUP + "ORDER BY o.id ASC LIMIT ?";
+	private static final String SUMMARY_PAGE_BEFORE_QUERY = SUMMARY_SELECT + "WHERE o.id < ? "
+														  + SUMMARY_GROUP + "ORDER BY o.id DESC LIMIT ?";
+
+	// The stored totals are kept in step with the order's lines by adding the change of a single line...
+	private static final String ADD_TO_TOTALS_QUERY =
+			"UPDATE `Order` SET noOfItems = noOfItems + ?, "
+		  + "totalPrice = totalPrice + ? * COALESCE((SELECT price FROM `Item` WHERE id = ?), 0) "
+		  + "WHERE id = ?";
+	// ... or, when that is not enough (e.g. an Item's price changed), by working them out again
+	private static final String REBUILD_TOTALS_SET =
+			"UPDATE `Order` o SET "
+		  + "noOfItems = (SELECT COALESCE(SUM(oi.amount), 0) FROM `OrderItem` oi WHERE oi.order_id = o.id), "
+		  + "totalPrice = (SELECT COALESCE(SUM(oi.amount * i.price), 0) FROM `OrderItem` oi "
+		  + "JOIN `Item` i ON i.id = oi.item_id WHERE oi.order_id = o.id) ";
+	private static final String REBUILD_TOTALS_QUERY = REBUILD_TOTALS_SET + "WHERE o.id = ?";
+	private static final String REBUILD_TOTALS_BY_ITEM_QUERY = REBUILD_TOTALS_SET
+			+ "WHERE o.id IN (SELECT order_id FROM `OrderItem` WHERE item_id = ?)";
+	private static final String UPDATE_USER_QUERY = "UPDATE `Order` SET user_id = ? WHERE id = ?";
+
+	private final EntityMetadata<OrderSummary> summaryMeta = EntityMetadata.forType(OrderSummary.class);
+
 	public OrderDAO() {
 		super(Order.class);
 	}
-	
+
 	/**
 	 * Finds all the orders in the database associated
 	 * with the given user id.
@@ -22,17 +67,20 @@ public class OrderDAO extends AbstractDAO<Order> {
 	 * @return A list of Order objects
 	 */
 	public List<Order> findByUserId(int id) {
+		MemoryTable<Order> memory = getMemoryTable();
+		if(null != memory) return memory.findBy("user_id", id);
+		
 		Connection connection = null;
 		PreparedStatement statement = null;
 		ResultSet resultSet = null;
 		String query = createSelectQuery("user_id");
-		try {
+		try (OperationTimer timer = time("findByUserId")) {
 			connection = ConnectionFactory.getConnection();
-			statement = connection.prepareStatement(query);
+			statement = ConnectionFactory.prepareStatement(connection, query);
 			statement.setInt(1, id);
 			resultSet = statement.executeQuery();
 
-			return createObjects(resultSet);
+			return timer.done(createObjects(resultSet));
 		} catch (SQLException e) {
 			LOGGER.log(Level.WARNING, "OrderDAO:findByUserId " + e.getMessage());
 		} finally {
@@ -42,4 +90,223 @@ public class OrderDAO extends AbstractDAO<Order> {
 		}
 		return null;
 	}
+
+	/**
+	 * Changes the user of the given order. Unlike {@link #update(Object)},
+	 * this leaves the stored totals alone, so that a stale copy of the
+	 * order cannot overwrite them.
+	 * @param o - the order, with its new user id
+	 * @return The same order
+	 * @throws DataAccessException if the database fails
+	 */
+	public Order updateUser(Order o) {
+		MemoryTable<Order> memory = getMemoryTable();
+		if(null != memory) {
+			memory.update(o.getId(), stored -> true, stored -> stored.setUser_id(o.getUser_id()), null);
+			return o;
+		}
+		
+		Connection connection = null;
+		PreparedStatement statement = null;
+		try (OperationTimer timer = time("updateUser")) {
+			connection = ConnectionFactory.getConnection();
+			if(null == connection) {
+				throw new DataAccessException("OrderDAO:updateUser could not get a connection", null);
+			}
+			statement = ConnectionFactory.prepareStatement(connection, UPDATE_USER_QUERY);
+			statement.setInt(1, o.getUser_id());
+			statement.setInt(2, o.getId());
+			timer.done(statement.executeUpdate());
+		} catch (SQLException e) {
+			LOGGER.log(Level.WARNING, "OrderDAO:updateUser " + e.getMessage());
+			throw new DataAccessException("OrderDAO:updateUser " + e.getMessage(), e);
+		} finally {
+			ConnectionFactory.close(statement);
+			ConnectionFactory.close(connection);
+		}
+		return o;
+	}
+
+	/**
+	 * Adds the given amount of an Item to the stored totals of an
+	 * order, as part of the given transaction. This should be called,
+	 * in the same transaction, whenever one of the order's lines is
+	 * inserted (positive amount), deleted (negative amount) or has its
+	 * amount changed (the difference).
+	 * @param tx - the transaction to take part in
+	 * @param orderId - the id of the order
+	 * @param itemId - the id of the Item of the line
+	 * @param amount - how much of the Item was added (or, if
+	 * 		  negative, taken away)
+	 * @return Whether the order was found
+	 * @throws SQLException if the update fails
+	 */
+	public boolean addToTotals(Transaction tx, int orderId, int itemId, int amount) throws SQLException {
+		MemoryTable<Order> memory = getMemoryTable();
+		if(null != memory) {
+			Item i = MemoryDatabase.getInstance().table(Item.class).findById(itemId);
+			BigDecimal price = (null == i || null == i.getPrice()) ? BigDecimal.ZERO : i.getPrice();
+			return memory.update(orderId, o -> true, o -> {
+				o.setNoOfItems(o.getNoOfItems() + amount);
+				o.setTotalPrice(o.getTotalPrice().add(price.multiply(new BigDecimal(amount))));
+			}, tx.getUndoLog());
+		}
+		return 0 != executeUpdate(tx, ADD_TO_TOTALS_QUERY, amount, amount, itemId, orderId);
+	}
+
+	/**
+	 * Works the stored totals of an order out again from its lines,
+	 * as part of the given transaction.
+	 * @param tx - the transaction to take part in
+	 * @param orderId - the id of the order
+	 * @return Whether the order was found
+	 * @throws SQLException if the update fails
+	 */
+	public boolean rebuildTotals(Transaction tx, int orderId) throws SQLException {
+		MemoryTable<Order> memory = getMemoryTable();
+		if(null != memory) {
+			OrderSummary s = summarize(orderId, 0);
+			return memory.update(orderId, o -> true, o -> {
+				o.setNoOfItems(s.getNoOfItems());
+				o.setTotalPrice(null == s.getTotalPrice() ? BigDecimal.ZERO : s.getTotalPrice());
+			}, tx.getUndoLog());
+		}
+		return 0 != executeUpdate(tx, REBUILD_TOTALS_QUERY, orderId);
+	}
+
+	/**
+	 * Works the stored totals of every order containing the given Item
+	 * out again, as part of the given transaction. This should be called,
+	 * in the same transaction, whenever an Item's price changes or the
+	 * Item is deleted.
+	 * @param tx - the transaction to take part in
+	 * @param itemId - the id of the Item
+	 * @return The number of orders rebuilt
+	 * @throws SQLException if the update fails
+	 */
+	public int rebuildTotalsForItem(Transaction tx, int itemId) throws SQLException {
+		if(null != getMemoryTable()) {
+			TreeSet<Integer> orderIds = new TreeSet<Integer>();
+			for(OrderItem oi : MemoryDatabase.getInstance().table(OrderItem.class).findBy("item_id", itemId)) {
+				orderIds.add(oi.getOrder_id());
+			}
+			int rebuilt = 0;
+			for(int orderId : orderIds) {
+				if(rebuildTotals(tx, orderId)) ++rebuilt;
+			}
+			return rebuilt;
+		}
+		return executeUpdate(tx, REBUILD_TOTALS_BY_ITEM_QUERY, itemId);
+	}
+
+	/**
+	 * Finds all the orders in the database, together with
+	 * their number of items and total price, using a single
+	 * aggregating query.
+	 * @return A list of OrderSummary objects
+	 */
+	public List<OrderSummary> findAllSummaries() {
+		MemoryTable<Order> memory = getMemoryTable();
+		if(null != memory) return MemoryDatabase.getInstance().read(() -> summarize(memory.findAll()));
+		
+		return findRows(SUMMARY_ALL_QUERY, summaryMeta, "findAllSummaries");
+	}
+
+	/**
+	 * Finds the order with the given id, together with its
+	 * number of items and total price. If no such order
+	 * exists, this method returns null.
+	 * @param id - the id of the order
+	 * @return The OrderSummary, if found, otherwise null
+	 */
+	public OrderSummary findSummaryById(int id) {
+		MemoryTable<Order> memory = getMemoryTable();
+		if(null != memory) {
+			return MemoryDatabase.getInstance().read(() -> {
+				Order o = memory.findById(id);
+				return null == o ? null : summarize(o.getId(), o.getUser_id());
+			});
+		}
+		
+		List<OrderSummary> summaries = findRows(SUMMARY_BY_ID_QUERY, summaryMeta, "findSummaryById", id);
+		return (null == summaries || summaries.isEmpty()) ? null : summaries.get(0);
+	}
+
+	/**
+	 * Finds a page of order summaries, as per {@link #findPage(int, int)}.
+	 * @param afterId - the id right before the page (exclusive)
+	 * @param limit - the most orders to return
+	 * @return A list of OrderSummary objects
+	 */
+	public List<OrderSummary> findSummaryPage(int afterId, int limit) {
+		MemoryTable<Order> memory = getMemoryTable();
+		if(null != memory) {
+			return MemoryDatabase.getInstance().read(() -> summarize(memory.findPage(afterId, limit)));
+		}
+		
+		return findRows(SUMMARY_PAGE_AFTER_QUERY, summaryMeta, "findSummaryPage", afterId, limit);
+	}
+
+	/**
+	 * Finds a page of order summaries, as per {@link #findPageBefore(int, int)}.
+	 * @param beforeId - the id right after the page (exclusive)
+	 * @param limit - the most orders to return
+	 * @return A list of OrderSummary objects
+	 */
+	public List<OrderSummary> findSummaryPageBefore(int beforeId, int limit) {
+		MemoryTable<Order> memory = getMemoryTable();
+		if(null != memory) {
+			return MemoryDatabase.getInstance().read(() -> summarize(memory.findPageBefore(beforeId, limit)));
+		}
+		
+		List<OrderSummary> summaries = findRows(SUMMARY_PAGE_BEFORE_QUERY, summaryMeta,
+													 "findSummaryPageBefore", beforeId, limit);
+		if(null != summaries) Collections.reverse(summaries); // We read it backwards
+		return summaries;
+	}
+
+	/**
+	 * Works out the summaries of the given orders from the in-memory
+	 * tables, the same way {@link #SUMMARY_SELECT} does in SQL.
+	 * @param orders - the orders to summarise
+	 * @return A list of OrderSummary objects, in the same order
+	 */
+	private List<OrderSummary> summarize(List<Order> orders) {
+		List<OrderSummary> summaries = new ArrayList<OrderSummary>();
+		for(Order o : orders) {
+			summaries.add(summarize(o.getId(), o.getUser_id()));
+		}
+		return summaries;
+	}
+
+	/**
+	 * Works out the summary of one order from the in-memory tables.
+	 * Lines whose Item is gone count towards the number of items, but
+	 * not towards the total price, which is null if no line has a price.
+	 * @param orderId - the id of the order
+	 * @param userId - the id of the order's user
+	 * @return The OrderSummary
+	 */
+	private OrderSummary summarize(int orderId, int userId) {
+		MemoryDatabase db = MemoryDatabase.getInstance();
+		MemoryTable<Item> items = db.table(Item.class);
+		
+		int noOfItems = 0;
+		BigDecimal totalPrice = null;
+		for(OrderItem oi : db.table(OrderItem.class).findBy("order_id", orderId)) {
+			noOfItems += oi.getAmount();
+			Item i = items.findById(oi.getItem_id());
+			if(null != i && null != i.getPrice()) {
+				BigDecimal subtotal = i.getPrice().multiply(new BigDecimal(oi.getAmount()));
+				totalPrice = (null == totalPrice) ? subtotal : totalPrice.add(subtotal);
+			}
+		}
+		
+		OrderSummary s = new OrderSummary();
+		s.setId(orderId);
+		s.setUser_id(userId);
+		s.setNoOfItems(noOfItems);
+		s.setTotalPrice(totalPrice);
+		return s;
+	}
 }
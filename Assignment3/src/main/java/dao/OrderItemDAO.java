@@ -4,17 +4,40 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
 
 import connection.ConnectionFactory;
+import dao.memory.MemoryDatabase;
+import dao.memory.MemoryTable;
+import metrics.OperationTimer;
+import model.Item;
 import model.OrderItem;
+import model.OrderItemLine;
 
 public class OrderItemDAO extends AbstractDAO<OrderItem> {
+	// Order lines, together with the name and price of the Item they refer to
+	private static final String LINE_SELECT =
+			"SELECT oi.id, oi.order_id, oi.item_id, oi.amount, "
+		  + "i.name AS itemName, i.price AS price "
+		  + "FROM `OrderItem` oi "
+		  + "LEFT JOIN `Item` i ON i.id = oi.item_id ";
+
+	private static final String LINE_ALL_QUERY = LINE_SELECT;
+	private static final String LINE_BY_ID_QUERY = LINE_SELECT + "WHERE oi.id = ?";
+	private static final String LINE_BY_ORDER_ID_QUERY = LINE_SELECT + "WHERE oi.order_id = ?";
+	private static final String LINE_PAGE_AFTER_QUERY = LINE_SELECT + "WHERE oi.id > ? ORDER BY oi.id ASC LIMIT ?";
+	private static final String LINE_PAGE_BEFORE_QUERY = LINE_SELECT + "WHERE oi.id < ? ORDER BY oi.id DESC LIMIT ?";
+	private static final String LINE_PAGE_AT_QUERY = LINE_SELECT + "ORDER BY oi.id ASC LIMIT ? OFFSET ?";
+
+	private final EntityMetadata<OrderItemLine> lineMeta = EntityMetadata.forType(OrderItemLine.class);
+
 	public OrderItemDAO() {
 		super(OrderItem.class);
 	}
-	
+
 	/**
 	 * Finds all the OrderItem objects associated with the given
 	 * Order's id.
@@ -22,17 +45,20 @@ public class OrderItemDAO extends AbstractDAO<OrderItem> {
 	 * @return A list of OrderItem objects
 	 */
 	public List<OrderItem> findByOrderId(int id) {
+		MemoryTable<OrderItem> memory = getMemoryTable();
+		if(null != memory) return memory.findBy("order_id", id);
+		
 		Connection connection = null;
 		PreparedStatement statement = null;
 		ResultSet resultSet = null;
 		String query = createSelectQuery("order_id");
-		try {
+		try (OperationTimer timer = time("findByOrderId")) {
 			connection = ConnectionFactory.getConnection();
-			statement = connection.prepareStatement(query);
+			statement = ConnectionFactory.prepareStatement(connection, query);
 			statement.setInt(1, id);
 			resultSet = statement.executeQuery();
 
-			return createObjects(resultSet);
+			return timer.done(createObjects(resultSet));
 		} catch (SQLException e) {
 			LOGGER.log(Level.WARNING, "OrderItemDAO:findByOrderId " + e.getMessage());
 		} finally {
@@ -42,4 +68,125 @@ public class OrderItemDAO extends AbstractDAO<OrderItem> {
 		}
 		return null;
 	}
+
+	/**
+	 * Finds all the order lines associated with the given Order's
+	 * id, each joined with the name and price of its Item, in a
+	 * single query.
+	 * @param id - the order id to search by
+	 * @return A list of OrderItemLine objects
+	 */
+	public List<OrderItemLine> findLinesByOrderId(int id) {
+		MemoryTable<OrderItem> memory = getMemoryTable();
+		if(null != memory) return MemoryDatabase.getInstance().read(() -> join(memory.findBy("order_id", id)));
+		return findRows(LINE_BY_ORDER_ID_QUERY, lineMeta, "findLinesByOrderId", id);
+	}
+
+	/**
+	 * Finds all the order lines in the database, each joined
+	 * with the name and price of its Item, in a single query.
+	 * @return A list of OrderItemLine objects
+	 */
+	public List<OrderItemLine> findAllLines() {
+		MemoryTable<OrderItem> memory = getMemoryTable();
+		if(null != memory) return MemoryDatabase.getInstance().read(() -> join(memory.findAll()));
+		return findRows(LINE_ALL_QUERY, lineMeta, "findAllLines");
+	}
+
+	/**
+	 * Finds the order line with the given id, joined with
+	 * the name and price of its Item. If no such line exists,
+	 * this method returns null.
+	 * @param id - the id of the OrderItem
+	 * @return The OrderItemLine, if found, otherwise null
+	 */
+	public OrderItemLine findLineById(int id) {
+		MemoryTable<OrderItem> memory = getMemoryTable();
+		if(null != memory) {
+			return MemoryDatabase.getInstance().read(() -> {
+				OrderItem oi = memory.findById(id);
+				return null == oi ? null : join(oi);
+			});
+		}
+		
+		List<OrderItemLine> lines = findRows(LINE_BY_ID_QUERY, lineMeta, "findLineById", id);
+		return (null == lines || lines.isEmpty()) ? null : lines.get(0);
+	}
+
+	/**
+	 * Finds a page of order lines, as per {@link #findPage(int, int)}.
+	 * @param afterId - the id right before the page (exclusive)
+	 * @param limit - the most lines to return
+	 * @return A list of OrderItemLine objects
+	 */
+	public List<OrderItemLine> findLinePage(int afterId, int limit) {
+		MemoryTable<OrderItem> memory = getMemoryTable();
+		if(null != memory) return MemoryDatabase.getInstance().read(() -> join(memory.findPage(afterId, limit)));
+		return findRows(LINE_PAGE_AFTER_QUERY, lineMeta, "findLinePage", afterId, limit);
+	}
+
+	/**
+	 * Finds a page of order lines, as per {@link #findPageAt(int, int)}.
+	 * @param offset - the number of lines to skip
+	 * @param limit - the most lines to return
+	 * @return A list of OrderItemLine objects
+	 */
+	public List<OrderItemLine> findLinePageAt(int offset, int limit) {
+		MemoryTable<OrderItem> memory = getMemoryTable();
+		if(null != memory) return MemoryDatabase.getInstance().read(() -> join(memory.findPageAt(offset, limit)));
+		return findRows(LINE_PAGE_AT_QUERY, lineMeta, "findLinePageAt", limit, offset);
+	}
+
+	/**
+	 * Finds a page of order lines, as per {@link #findPageBefore(int, int)}.
+	 * @param beforeId - the id right after the page (exclusive)
+	 * @param limit - the most lines to return
+	 * @return A list of OrderItemLine objects
+	 */
+	public List<OrderItemLine> findLinePageBefore(int beforeId, int limit) {
+		MemoryTable<OrderItem> memory = getMemoryTable();
+		if(null != memory) {
+			return MemoryDatabase.getInstance().read(() -> join(memory.findPageBefore(beforeId, limit)));
+		}
+		
+		List<OrderItemLine> lines = findRows(LINE_PAGE_BEFORE_QUERY, lineMeta, "findLinePageBefore",
+											 beforeId, limit);
+		if(null != lines) Collections.reverse(lines); // We read it backwards
+		return lines;
+	}
+
+	/**
+	 * Joins the given order lines with their Items from the
+	 * in-memory tables, the same way {@link #LINE_SELECT} does in SQL.
+	 * @param ois - the order lines to join
+	 * @return A list of OrderItemLine objects, in the same order
+	 */
+	private List<OrderItemLine> join(List<OrderItem> ois) {
+		List<OrderItemLine> lines = new ArrayList<OrderItemLine>();
+		for(OrderItem oi : ois) {
+			lines.add(join(oi));
+		}
+		return lines;
+	}
+
+	/**
+	 * Joins one order line with its Item from the in-memory tables.
+	 * If the Item is gone, the name and price are left null.
+	 * @param oi - the order line to join
+	 * @return The OrderItemLine
+	 */
+	private OrderItemLine join(OrderItem oi) {
+		OrderItemLine l = new OrderItemLine();
+		l.setId(oi.getId());
+		l.setOrder_id(oi.getOrder_id());
+		l.setItem_id(oi.getItem_id());
+		l.setAmount(oi.getAmount());
+		
+		Item i = MemoryDatabase.getInstance().table(Item.class).findById(oi.getItem_id());
+		if(null != i) {
+			l.setItemName(i.getName());
+			l.setPrice(i.getPrice());
+		}
+		return l;
+	}
 }
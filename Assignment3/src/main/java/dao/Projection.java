@@ -0,0 +1,191 @@
+package dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A subset of an entity's columns, to be read instead of the whole row
+ * (e.g. only the id and price of Items). Reads through a projection
+ * select just those columns and give back <i>partial</i> entities: the
+ * projected fields are filled in, and every other field is left as a
+ * new instance has it (null, 0 or false).
+ * <br>
+ * The <i>id</i> column is always part of a projection, so that partial
+ * entities can still be told apart and looked up by id. Columns keep
+ * the entity's order, whatever order they were asked for in.
+ * <br>
+ * Instances are immutable and hold their SQL, built once; obtain
+ * them through {@link AbstractDAO#projection(String...)}, which
+ * hands out the same instance when asked for the same columns again.
+ * @param <T> - the entity class
+ */
+public final class Projection<T> {
+	private final EntityMetadata<T> meta;
+	private final String[] columns;
+	private final boolean[] selected; // Per entity column
+	private final String key;
+
+	private final String selectQuery;
+	private final String selectByIdQuery;
+	private final ConcurrentMap<Integer, String> inListQueries = new ConcurrentHashMap<Integer, String>();
+
+	/**
+	 * Works out the projection of the given columns of an entity.
+	 * @param meta - the metadata of the entity
+	 * @param names - the names of the columns to read
+	 * @throws IllegalArgumentException if the entity has no such column
+	 */
+	Projection(EntityMetadata<T> meta, String... names) {
+		this.meta = meta;
+		selected = select(meta, names);
+		key = keyOf(meta, selected);
+		columns = key.split(", ");
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("SELECT ");
+		sb.append(key);
+		sb.append(" FROM ");
+		sb.append("`" + meta.getTableName() + "`");
+		selectQuery = sb.toString();
+		selectByIdQuery = selectQuery + " WHERE id =?";
+	}
+
+	/**
+	 * Returns the key of the projection of the given columns, as per
+	 * {@link #getKey()}, without building the projection: the same
+	 * for the same columns, whatever order they are given in.
+	 * @param meta - the metadata of the entity
+	 * @param names - the names of the columns to read
+	 * @return A comma-separated list of column names
+	 * @throws IllegalArgumentException if the entity has no such column
+	 */
+	static String keyOf(EntityMetadata<?> meta, String... names) {
+		return keyOf(meta, select(meta, names));
+	}
+
+	private static boolean[] select(EntityMetadata<?> meta, String... names) {
+		List<String> all = meta.getColumns();
+		boolean[] selected = new boolean[all.size()];
+		selected[meta.getIdIndex()] = true;
+		for(String name : names) {
+			int column = all.indexOf(name);
+			if(-1 == column) {
+				throw new IllegalArgumentException(meta.getTableName() + " has no column " + name);
+			}
+			selected[column] = true;
+		}
+		return selected;
+	}
+
+	private static String keyOf(EntityMetadata<?> meta, boolean[] selected) {
+		List<String> all = meta.getColumns();
+		StringJoiner cols = new StringJoiner(", ");
+		for(int i = 0; i < selected.length; ++i) {
+			if(selected[i]) cols.add(all.get(i));
+		}
+		return cols.toString();
+	}
+
+	/**
+	 * Returns the projected columns, in the entity's column order.
+	 * @return An unmodifiable list of column names, the id included
+	 */
+	public List<String> getColumns() {
+		return Collections.unmodifiableList(Arrays.asList(columns));
+	}
+
+	/**
+	 * Returns the projected columns as they appear in the SELECT
+	 * list, e.g. "id, price".
+	 * @return A comma-separated list of column names
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Tells whether the given column is read by this projection.
+	 * @param column - a column name
+	 * @return True if partial entities have that field filled in
+	 */
+	public boolean includes(String column) {
+		int i = meta.getColumns().indexOf(column);
+		return -1 != i && selected[i];
+	}
+
+	/**
+	 * Returns the SQL query of the type					<br>
+	 * <b>SELECT</b> &lt;columns&gt; <b>FROM</b> &lt;table&gt;
+	 * @return A String containing the SELECT query
+	 */
+	String selectQuery() {
+		return selectQuery;
+	}
+
+	/**
+	 * Returns the SQL query of the type					<br>
+	 * <b>SELECT</b> &lt;columns&gt; <b>FROM</b> &lt;table&gt;	<br>
+	 * <b>WHERE</b> id = ?
+	 * @return A String containing the SELECT query
+	 */
+	String selectByIdQuery() {
+		return selectByIdQuery;
+	}
+
+	/**
+	 * Creates an SQL query of the type					<br>
+	 * <b>SELECT</b> &lt;columns&gt; <b>FROM</b> &lt;table&gt;	<br>
+	 * <b>WHERE</b> id <b>IN</b> (?, ?, ...)				<br>
+	 * with the given number of question marks. The query
+	 * is only built the first time a given size is asked for.
+	 * @param size - the number of ids in the IN list
+	 * @return A String containing the SELECT query
+	 */
+	String inListQuery(int size) {
+		return inListQueries.computeIfAbsent(size, n -> {
+			StringJoiner questionMarks = new StringJoiner(", ", " WHERE id IN (", ")");
+			for(int i = 0; i < n; ++i) {
+				questionMarks.add("?");
+			}
+			return selectQuery + questionMarks.toString();
+		});
+	}
+
+	/**
+	 * Finds where each projected column is in the given ResultSet,
+	 * as per {@link EntityMetadata#findColumns(ResultSet)}. The
+	 * columns left out of the projection get an index of 0, which
+	 * tells {@link EntityMetadata#mapRow(ResultSet, int[])} to skip them.
+	 * @param resultSet - a ResultSet with a column for every projected column
+	 * @return The ResultSet index of every entity column, or 0
+	 * @throws SQLException if a projected column is missing from the ResultSet
+	 */
+	int[] findColumns(ResultSet resultSet) throws SQLException {
+		List<String> all = meta.getColumns();
+		int[] indexes = new int[selected.length];
+		for(int i = 0; i < selected.length; ++i) {
+			if(selected[i]) indexes[i] = resultSet.findColumn(all.get(i));
+		}
+		return indexes;
+	}
+
+	/**
+	 * Copies the projected columns of the given entity into a new,
+	 * partial one; used where the rows are already in memory.
+	 * @param t - a whole entity
+	 * @return A partial entity, as if it had been read through this projection
+	 */
+	T copyOf(T t) {
+		T partial = meta.newInstance();
+		for(int i = 0; i < selected.length; ++i) {
+			if(selected[i]) meta.set(partial, i, meta.get(t, i));
+		}
+		return partial;
+	}
+}
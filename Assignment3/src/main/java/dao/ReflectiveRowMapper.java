@@ -0,0 +1,242 @@
+package dao;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import mapper.RowMapper;
+
+/**
+ * The {@link RowMapper} of classes that have no generated one: works
+ * out the columns by reflection once, then reads and writes fields
+ * through pre-built {@link MethodHandle}s rather than
+ * {@link Field#get}/{@link Field#set}.
+ * @param <T> - the entity class
+ */
+final class ReflectiveRowMapper<T> implements RowMapper<T> { // Package-visible, see EntityMetadata
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private final Class<T> type;
+	private final String[] columns;
+	private final Class<?>[] columnTypes;
+	private final int idIndex;
+
+	private final MethodHandle constructor;
+	private final MethodHandle[] getters;
+	private final MethodHandle[] setters;
+	private final MethodHandle idGetter;
+	private final MethodHandle idSetter;
+	private final ColumnReader[] readers;
+
+	/**
+	 * Works out the columns and accessors of the given class.
+	 * @param type - the entity class
+	 * @throws IllegalArgumentException if the class has no no-argument
+	 * 		constructor or no <i>int id</i> field
+	 */
+	ReflectiveRowMapper(Class<T> type) {
+		this.type = type;
+
+		List<Field> fields = new ArrayList<Field>();
+		for(Field field : type.getDeclaredFields()) {
+			if(Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) continue;
+			fields.add(field);
+		}
+
+		int n = fields.size();
+		columns = new String[n];
+		columnTypes = new Class<?>[n];
+		getters = new MethodHandle[n];
+		setters = new MethodHandle[n];
+		readers = new ColumnReader[n];
+		int id = -1;
+
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		try {
+			constructor = lookup.unreflectConstructor(type.getDeclaredConstructor())
+								.asType(MethodType.methodType(Object.class));
+			for(int i = 0; i < n; ++i) {
+				Field field = fields.get(i);
+				field.setAccessible(true); // Lombok models keep their fields private
+				columns[i] = field.getName();
+				columnTypes[i] = field.getType();
+				getters[i] = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+				setters[i] = adaptSetter(lookup.unreflectSetter(field), field.getType());
+				readers[i] = readerFor(field.getType());
+				if("id".equals(field.getName()) && int.class == field.getType()) id = i;
+			}
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException(type.getName() + " has no no-argument constructor", e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException(type.getName() + " cannot be accessed reflectively", e);
+		}
+
+		if(-1 == id) {
+			throw new IllegalArgumentException(type.getName() + " has no int id field");
+		}
+		idIndex = id;
+		try {
+			Field idField = fields.get(id);
+			idGetter = lookup.unreflectGetter(idField).asType(MethodType.methodType(int.class, Object.class));
+			idSetter = lookup.unreflectSetter(idField).asType(MethodType.methodType(void.class, Object.class, int.class));
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException(type.getName() + " cannot be accessed reflectively", e);
+		}
+	}
+
+	public String[] columns() {
+		return columns.clone();
+	}
+
+	public Class<?>[] columnTypes() {
+		return columnTypes.clone();
+	}
+
+	public int idIndex() {
+		return idIndex;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T newInstance() {
+		try {
+			return (T) constructor.invokeExact();
+		} catch (Throwable e) {
+			throw new IllegalStateException("Could not instantiate " + type.getName(), e);
+		}
+	}
+
+	public T mapRow(ResultSet resultSet, int[] indexes) throws SQLException {
+		T instance = newInstance();
+		for(int i = 0; i < columns.length; ++i) {
+			if(0 == indexes[i]) continue; // Not selected
+			set(instance, i, readers[i].read(resultSet, indexes[i]));
+		}
+		return instance;
+	}
+
+	public int bindColumns(PreparedStatement statement, T t, int firstIndex) throws SQLException {
+		int index = firstIndex;
+		for(int i = 0; i < columns.length; ++i) {
+			statement.setObject(index++, get(t, i));
+		}
+		return index;
+	}
+
+	public void bindColumn(PreparedStatement statement, T t, int column, int index) throws SQLException {
+		statement.setObject(index, get(t, column));
+	}
+
+	public int getId(T t) {
+		try {
+			return (int) idGetter.invokeExact((Object) t);
+		} catch (Throwable e) {
+			throw new IllegalStateException("Could not read the id of " + type.getName(), e);
+		}
+	}
+
+	public void setId(T t, int id) {
+		try {
+			idSetter.invokeExact((Object) t, id);
+		} catch (Throwable e) {
+			throw new IllegalStateException("Could not write the id of " + type.getName(), e);
+		}
+	}
+
+	public Object get(T t, int column) {
+		try {
+			return (Object) getters[column].invokeExact((Object) t);
+		} catch (Throwable e) {
+			throw new IllegalStateException("Could not read " + columns[column] + " of " + type.getName(), e);
+		}
+	}
+
+	public void set(T t, int column, Object value) {
+		try {
+			setters[column].invokeExact((Object) t, value);
+		} catch (Throwable e) {
+			throw new IllegalStateException("Could not write " + columns[column] + " of " + type.getName(), e);
+		}
+	}
+
+	/**
+	 * Reads one column of the current row of a ResultSet.
+	 */
+	private interface ColumnReader {
+		Object read(ResultSet resultSet, int index) throws SQLException;
+	}
+
+	/**
+	 * Picks the ResultSet getter that matches the given field type,
+	 * so that the driver does not have to guess (and box) the value's
+	 * type. Wrapper types are told apart from NULL through wasNull.
+	 */
+	private static ColumnReader readerFor(Class<?> fieldType) {
+		if(int.class == fieldType) return ResultSet::getInt;
+		if(long.class == fieldType) return ResultSet::getLong;
+		if(double.class == fieldType) return ResultSet::getDouble;
+		if(boolean.class == fieldType) return ResultSet::getBoolean;
+		if(String.class == fieldType) return ResultSet::getString;
+		if(BigDecimal.class == fieldType) return ResultSet::getBigDecimal;
+		if(Integer.class == fieldType) return (rs, i) -> nullIfWasNull(rs, rs.getInt(i));
+		if(Long.class == fieldType) return (rs, i) -> nullIfWasNull(rs, rs.getLong(i));
+		if(Double.class == fieldType) return (rs, i) -> nullIfWasNull(rs, rs.getDouble(i));
+		if(Boolean.class == fieldType) return (rs, i) -> nullIfWasNull(rs, rs.getBoolean(i));
+		return ResultSet::getObject; // Whatever the driver makes of it
+	}
+
+	private static Object nullIfWasNull(ResultSet resultSet, Object value) throws SQLException {
+		return resultSet.wasNull() ? null : value;
+	}
+
+	/**
+	 * Adapts a field setter to the shape (Object, Object)void, slipping
+	 * in a conversion for primitive fields. Drivers may hand back a Long
+	 * or a BigDecimal for what we store in an int (e.g. for SUM columns),
+	 * and SQL NULL has no primitive equivalent.
+	 */
+	private static MethodHandle adaptSetter(MethodHandle setter, Class<?> fieldType) throws IllegalAccessException {
+		if(fieldType.isPrimitive()) {
+			try {
+				MethodHandle converter = MethodHandles.lookup().findStatic(ReflectiveRowMapper.class,
+						"to" + Character.toUpperCase(fieldType.getName().charAt(0)) + fieldType.getName().substring(1),
+						MethodType.methodType(fieldType, Object.class));
+				setter = MethodHandles.filterArguments(setter, 1, converter);
+			} catch (NoSuchMethodException e) {
+				; // No conversion for this type (e.g. char); rely on plain unboxing
+			}
+		}
+		return setter.asType(SETTER_TYPE);
+	}
+
+	// Looked up by name in adaptSetter
+	@SuppressWarnings("unused")
+	private static int toInt(Object value) {
+		return null == value ? 0 : ((Number) value).intValue();
+	}
+
+	@SuppressWarnings("unused")
+	private static long toLong(Object value) {
+		return null == value ? 0L : ((Number) value).longValue();
+	}
+
+	@SuppressWarnings("unused")
+	private static double toDouble(Object value) {
+		return null == value ? 0.0 : ((Number) value).doubleValue();
+	}
+
+	@SuppressWarnings("unused")
+	private static boolean toBoolean(Object value) {
+		if(null == value) return false;
+		if(value instanceof Number) return ((Number) value).intValue() != 0; // MySQL BIT/TINYINT
+		return (Boolean) value;
+	}
+}
@@ -0,0 +1,35 @@
+package dao;
+
+/**
+ * Tells which storage backend the DAOs use, as chosen at startup
+ * through the {@value #PROPERTY} system property:
+ * <ul>
+ * <li><b>jdbc</b> (the default) - the MySQL database, through
+ * {@link connection.ConnectionFactory}</li>
+ * <li><b>memory</b> - the in-process tables of
+ * {@link dao.memory.MemoryDatabase}, which start out empty and
+ * are lost when the application exits</li>
+ * </ul>
+ * For example: <code>java -Dwarehouse.storage=memory main.Main</code>
+ */
+public final class Storage {
+	/**
+	 * The name of the system property that selects the backend.
+	 */
+	public static final String PROPERTY = "warehouse.storage";
+
+	private static final boolean IN_MEMORY = "memory".equalsIgnoreCase(System.getProperty(PROPERTY, "jdbc"));
+
+	private Storage() {
+		// Static helper; not meant to be instantiated
+	}
+
+	/**
+	 * Tells whether the DAOs keep their data in memory
+	 * rather than in the MySQL database.
+	 * @return True for the in-memory backend
+	 */
+	public static boolean isInMemory() {
+		return IN_MEMORY;
+	}
+}
@@ -0,0 +1,111 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import connection.ConnectionFactory;
+import dao.memory.MemoryDatabase;
+import dao.memory.UndoLog;
+
+/**
+ * A database transaction that several DAO calls can take part in.
+ * The business layer only ever sees this handle; the connection (or,
+ * with the in-memory backend, the undo log) underneath stays inside
+ * the dao package. Transactions are run
+ * through {@link #execute(Work)}:
+ * <pre>
+ * Transaction.execute(tx -&gt; {
+ *     itemDao.decrementStock(tx, itemId, amount);
+ *     return orderItemDao.insert(tx, orderItem);
+ * });
+ * </pre>
+ */
+public final class Transaction {
+	private static final Logger LOGGER = Logger.getLogger(Transaction.class.getName());
+
+	/**
+	 * A piece of work to be done inside a transaction.
+	 * @param <R> - the type of the work's result
+	 */
+	public interface Work<R> {
+		R run(Transaction tx) throws SQLException;
+	}
+
+	private final Connection connection; // Null with the in-memory backend
+	private final UndoLog undoLog; // Null with the JDBC backend
+
+	private Transaction(Connection connection, UndoLog undoLog) {
+		this.connection = connection;
+		this.undoLog = undoLog;
+	}
+
+	/**
+	 * Returns the connection this transaction runs on.
+	 * @return A connection with auto-commit turned off
+	 */
+	Connection getConnection() { // Package-visible, for the DAOs
+		return connection;
+	}
+
+	/**
+	 * Returns the log of the changes this transaction made
+	 * to the in-memory tables.
+	 * @return The UndoLog, or null with the JDBC backend
+	 */
+	UndoLog getUndoLog() { // Package-visible, for the DAOs
+		return undoLog;
+	}
+
+	/**
+	 * Runs the given work in a new transaction. The transaction
+	 * is committed if the work returns normally, and rolled back
+	 * if it throws anything; unchecked exceptions (e.g. validation
+	 * failures) are passed on as they are, while database failures
+	 * are wrapped in a {@link DataAccessException}.
+	 * @param work - what to do inside the transaction
+	 * @return Whatever the work returned
+	 * @throws DataAccessException if the database fails
+	 */
+	public static <R> R execute(Work<R> work) {
+		if(Storage.isInMemory()) return executeInMemory(work);
+		
+		Connection connection = ConnectionFactory.getConnection();
+		if(null == connection) {
+			throw new DataAccessException("Transaction:execute could not get a connection", null);
+		}
+		try {
+			connection.setAutoCommit(false);
+			R result = work.run(new Transaction(connection, null));
+			connection.commit();
+			return result;
+		} catch (SQLException e) {
+			AbstractDAO.rollback(connection);
+			LOGGER.log(Level.WARNING, "Transaction:execute " + e.getMessage());
+			throw new DataAccessException("Transaction:execute " + e.getMessage(), e);
+		} catch (RuntimeException e) {
+			AbstractDAO.rollback(connection);
+			throw e;
+		} finally {
+			ConnectionFactory.close(connection); // Also puts auto-commit back on
+		}
+	}
+
+	private static <R> R executeInMemory(Work<R> work) {
+		MemoryDatabase db = MemoryDatabase.getInstance();
+		UndoLog undoLog = db.begin(); // Holds the write lock until the end
+		try {
+			return work.run(new Transaction(null, undoLog));
+		} catch (SQLException e) {
+			undoLog.rollback();
+			LOGGER.log(Level.WARNING, "Transaction:execute " + e.getMessage());
+			throw new DataAccessException("Transaction:execute " + e.getMessage(), e);
+		} catch (RuntimeException e) {
+			undoLog.rollback();
+			throw e;
+		} finally {
+			db.end();
+		}
+	}
+}
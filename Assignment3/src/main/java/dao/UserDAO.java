@@ -8,6 +8,8 @@ import java.util.List;
 import java.util.logging.Level;
 
 import connection.ConnectionFactory;
+import dao.memory.MemoryTable;
+import metrics.OperationTimer;
 import model.User;
 
 public class UserDAO extends AbstractDAO<User> {
@@ -25,18 +27,24 @@ public class UserDAO extends AbstractDAO<User> {
 	 * @return The user, if found, otherwise null
 	 */
 	public User findByEmail(String email) {
+		MemoryTable<User> memory = getMemoryTable();
+		if(null != memory) {
+			List<User> users = memory.findBy("email", email);
+			return users.isEmpty() ? null : users.get(0);
+		}
+		
 		Connection connection = null;
 		PreparedStatement statement = null;
 		ResultSet resultSet = null;
 		String query = createSelectQuery("email");
-		try {
+		try (OperationTimer timer = time("findByEmail")) {
 			connection = ConnectionFactory.getConnection();
-			statement = connection.prepareStatement(query);
+			statement = ConnectionFactory.prepareStatement(connection, query);
 			statement.setString(1, email);
 			resultSet = statement.executeQuery();
 
 			List<User> users = createObjects(resultSet);
-			return users.isEmpty() ? null : users.get(0);
+			return timer.done(users.isEmpty() ? null : users.get(0));
 		} catch (SQLException e) {
 			LOGGER.log(Level.WARNING, "ItemDAO:findByName " + e.getMessage());
 		} finally {
@@ -0,0 +1,104 @@
+package dao.memory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+import dao.EntityMetadata;
+
+/**
+ * A pure-Java, in-process database: one {@link MemoryTable} per model
+ * class, created the first time it is asked for. Nothing is ever
+ * written to disk, so every run starts out empty.
+ * <br>
+ * All the tables share a single read-write lock. Reads take the read
+ * lock, single writes take the write lock, and a transaction holds the
+ * write lock from start to end, so transactions are fully serialised.
+ */
+public final class MemoryDatabase {
+	/**
+	 * The columns that get a secondary index, in
+	 * whichever tables they appear.
+	 */
+	static final String[] INDEXED_COLUMNS = { "order_id", "item_id", "user_id" };
+
+	private static final MemoryDatabase INSTANCE = new MemoryDatabase();
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final ConcurrentMap<Class<?>, MemoryTable<?>> tables = new ConcurrentHashMap<Class<?>, MemoryTable<?>>();
+
+	private MemoryDatabase() {
+		// Singleton
+	}
+
+	/**
+	 * Returns the one in-memory database of this process.
+	 * @return The MemoryDatabase
+	 */
+	public static MemoryDatabase getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Returns the table storing the given model class,
+	 * creating it (empty) if it does not exist yet.
+	 * @param type - the model class, e.g. Item.class
+	 * @return The MemoryTable of that class
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> MemoryTable<T> table(Class<T> type) {
+		return (MemoryTable<T>) tables.computeIfAbsent(type,
+				t -> new MemoryTable<T>(EntityMetadata.forType(type), lock, INDEXED_COLUMNS));
+	}
+
+	/**
+	 * Runs the given reads under the read lock, so that reads spanning
+	 * several tables (e.g. joins) see all of them in the same state.
+	 * @param reads - the reads to run
+	 * @return Whatever the reads returned
+	 */
+	public <R> R read(Supplier<R> reads) {
+		lock.readLock().lock();
+		try {
+			return reads.get();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Starts a transaction, by taking the write lock for the calling
+	 * thread. Every change the transaction makes must be recorded in
+	 * the returned log, which must then be either dropped (commit) or
+	 * rolled back, and the transaction ended through {@link #end()}.
+	 * @return An empty UndoLog for the transaction
+	 */
+	public UndoLog begin() {
+		lock.writeLock().lock();
+		return new UndoLog();
+	}
+
+	/**
+	 * Ends the transaction started by the calling
+	 * thread, releasing the write lock.
+	 */
+	public void end() {
+		lock.writeLock().unlock();
+	}
+
+	/**
+	 * Deletes every row of every table, and starts their ids
+	 * over. Useful between benchmark or test runs.
+	 */
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			for(MemoryTable<?> table : tables.values()) {
+				table.clear();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+}
@@ -0,0 +1,419 @@
+package dao.memory;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import dao.EntityMetadata;
+
+/**
+ * An in-memory table of model objects, with the same semantics as
+ * the SQL tables behind the DAOs: auto-increment ids (an id of 0 on
+ * insert means "pick one"), a primary key, and secondary indexes.
+ * <br>
+ * Rows are kept in a hash map by id (the primary key index), with a
+ * sorted set of ids next to it for the ordered scans that pagination
+ * needs. Each indexed column maps every value it holds to the ids of
+ * the rows holding it. Rows are stored and handed out as copies, so
+ * that nothing outside the table can change them behind its back.
+ * <br>
+ * Writes made as part of a transaction record how to undo themselves
+ * in the transaction's {@link UndoLog}; a null log means the write
+ * stands on its own.
+ * @param <T> - the model class stored in the table
+ */
+public class MemoryTable<T> {
+	private final EntityMetadata<T> meta;
+	private final ReentrantReadWriteLock lock; // Shared by the whole database
+
+	private final Map<Integer, T> rows = new HashMap<Integer, T>();
+	private final TreeSet<Integer> ids = new TreeSet<Integer>();
+	private final Map<String, Index> indexes = new HashMap<String, Index>();
+	private int nextId = 1;
+
+	MemoryTable(EntityMetadata<T> meta, ReentrantReadWriteLock lock, String... indexedColumns) { // Package-visible
+		this.meta = meta;
+		this.lock = lock;
+		for(String column : indexedColumns) {
+			int position = meta.getColumns().indexOf(column);
+			if(-1 != position) indexes.put(column, new Index(position));
+		}
+	}
+
+	/**
+	 * Returns every row, in increasing order of id.
+	 * @return A list of copies of the rows
+	 */
+	public List<T> findAll() {
+		lock.readLock().lock();
+		try {
+			List<T> found = new ArrayList<T>(ids.size());
+			for(Integer id : ids) {
+				found.add(copy(rows.get(id)));
+			}
+			return found;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the row with the given id, through the primary key index.
+	 * @param id - the id of the row
+	 * @return A copy of the row, or null if there is none
+	 */
+	public T findById(int id) {
+		lock.readLock().lock();
+		try {
+			T row = rows.get(id);
+			return null == row ? null : copy(row);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the rows with the given ids. Ids that
+	 * match no row are simply missing from the result.
+	 * @param wanted - the ids of the rows
+	 * @return A map from id to a copy of the row
+	 */
+	public Map<Integer, T> findByIds(Collection<Integer> wanted) {
+		lock.readLock().lock();
+		try {
+			Map<Integer, T> found = new HashMap<Integer, T>();
+			for(Integer id : wanted) {
+				T row = rows.get(id);
+				if(null != row) found.put(id, copy(row));
+			}
+			return found;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns at most limit rows whose id is greater than
+	 * afterId, in increasing order of id.
+	 * @param afterId - the id right before the page (exclusive)
+	 * @param limit - the most rows to return
+	 * @return A list of copies of the rows
+	 */
+	public List<T> findPage(int afterId, int limit) {
+		lock.readLock().lock();
+		try {
+			List<T> found = new ArrayList<T>();
+			Iterator<Integer> it = ids.tailSet(afterId, false).iterator();
+			while(it.hasNext() && found.size() < limit) {
+				found.add(copy(rows.get(it.next())));
+			}
+			return found;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns at most limit rows, starting with the one at the given
+	 * position in increasing order of id (0 for the first row).
+	 * @param offset - the number of rows to skip
+	 * @param limit - the most rows to return
+	 * @return A list of copies of the rows
+	 */
+	public List<T> findPageAt(int offset, int limit) {
+		lock.readLock().lock();
+		try {
+			List<T> found = new ArrayList<T>();
+			Iterator<Integer> it = ids.iterator();
+			for(int skipped = 0; skipped < offset && it.hasNext(); ++skipped) {
+				it.next();
+			}
+			while(it.hasNext() && found.size() < limit) {
+				found.add(copy(rows.get(it.next())));
+			}
+			return found;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns at most limit rows whose id is less than beforeId,
+	 * that is, the page right before the one starting at beforeId,
+	 * still in increasing order of id.
+	 * @param beforeId - the id right after the page (exclusive)
+	 * @param limit - the most rows to return
+	 * @return A list of copies of the rows
+	 */
+	public List<T> findPageBefore(int beforeId, int limit) {
+		lock.readLock().lock();
+		try {
+			List<T> found = new ArrayList<T>();
+			Iterator<Integer> it = ids.headSet(beforeId, false).descendingIterator();
+			while(it.hasNext() && found.size() < limit) {
+				found.add(copy(rows.get(it.next())));
+			}
+			Collections.reverse(found); // We read it backwards
+			return found;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the rows whose given column holds the given value, in
+	 * increasing order of id. Indexed columns are looked up through
+	 * their index; any other column is found by scanning the table.
+	 * @param column - the name of the column
+	 * @param value - the value to look for (boxed, for primitive columns)
+	 * @return A list of copies of the rows
+	 */
+	public List<T> findBy(String column, Object value) {
+		lock.readLock().lock();
+		try {
+			List<T> found = new ArrayList<T>();
+			Index index = indexes.get(column);
+			if(null != index) {
+				TreeSet<Integer> matching = index.entries.get(value);
+				if(null != matching) {
+					for(Integer id : matching) {
+						found.add(copy(rows.get(id)));
+					}
+				}
+				return found;
+			}
+
+			int position = meta.getColumns().indexOf(column);
+			if(-1 == position) throw new IllegalArgumentException("No column " + column + " in " + meta.getTableName());
+			for(Integer id : ids) {
+				T row = rows.get(id);
+				if(Objects.equals(value, meta.get(row, position))) found.add(copy(row));
+			}
+			return found;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of rows in the table.
+	 * @return The row count
+	 */
+	public int count() {
+		lock.readLock().lock();
+		try {
+			return rows.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Inserts a copy of the given row. If its id is 0, the row gets
+	 * the next free id, which is then set on the given object too.
+	 * @param t - the row to insert
+	 * @param undo - the log of the running transaction, or null
+	 * @throws SQLException if a row with the same id already exists
+	 */
+	public void insert(T t, UndoLog undo) throws SQLException {
+		lock.writeLock().lock();
+		try {
+			int id = meta.getId(t);
+			if(0 == id) {
+				id = nextId++;
+			} else if(rows.containsKey(id)) {
+				throw new SQLIntegrityConstraintViolationException("Duplicate entry '" + id
+																	+ "' for key '" + meta.getTableName() + ".PRIMARY'");
+			} else {
+				nextId = Math.max(nextId, id + 1);
+			}
+
+			T row = copy(t);
+			meta.setId(row, id);
+			put(row);
+			meta.setId(t, id);
+
+			final int insertedId = id;
+			if(null != undo) undo.add(() -> remove(insertedId));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Inserts copies of all the given rows, as per {@link #insert(Object,
+	 * UndoLog)}. Either all the rows are inserted or, if one fails, none.
+	 * @param ts - the rows to insert
+	 * @param undo - the log of the running transaction, or null
+	 * @throws SQLException if a row with the same id already exists
+	 */
+	public void insertAll(List<T> ts, UndoLog undo) throws SQLException {
+		lock.writeLock().lock();
+		try {
+			UndoLog inserted = new UndoLog();
+			try {
+				for(T t : ts) {
+					insert(t, inserted);
+				}
+			} catch (SQLException e) {
+				inserted.rollback();
+				throw e;
+			}
+			if(null != undo) undo.addAll(inserted);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Replaces the row with the same id as the given one by a copy of it.
+	 * @param t - the new version of the row
+	 * @param undo - the log of the running transaction, or null
+	 * @return Whether a row with that id was found
+	 */
+	public boolean update(T t, UndoLog undo) {
+		lock.writeLock().lock();
+		try {
+			T old = rows.get(meta.getId(t));
+			if(null == old) return false;
+
+			remove(meta.getId(old));
+			put(copy(t));
+			if(null != undo) undo.add(() -> {
+				remove(meta.getId(old));
+				put(old);
+			});
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Changes the row with the given id in place, but only if it
+	 * meets the given condition; checking and changing happen under
+	 * the same lock, like a conditional UPDATE statement would.
+	 * @param id - the id of the row
+	 * @param condition - what the row must meet to be changed
+	 * @param change - applied to (a copy of) the row; must not change its id
+	 * @param undo - the log of the running transaction, or null
+	 * @return Whether the row was found, met the condition and was changed
+	 */
+	public boolean update(int id, Predicate<? super T> condition, Consumer<? super T> change, UndoLog undo) {
+		lock.writeLock().lock();
+		try {
+			T old = rows.get(id);
+			if(null == old || !condition.test(old)) return false;
+
+			T changed = copy(old);
+			change.accept(changed);
+			remove(id);
+			put(changed);
+			if(null != undo) undo.add(() -> {
+				remove(id);
+				put(old);
+			});
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Deletes the row with the given id.
+	 * @param id - the id of the row
+	 * @param undo - the log of the running transaction, or null
+	 * @return Whether a row with that id was found (and deleted)
+	 */
+	public boolean delete(int id, UndoLog undo) {
+		lock.writeLock().lock();
+		try {
+			T old = remove(id);
+			if(null == old) return false;
+
+			if(null != undo) undo.add(() -> put(old));
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Deletes every row, and starts the ids over.
+	 */
+	void clear() { // Package-visible, for the database
+		lock.writeLock().lock();
+		try {
+			rows.clear();
+			ids.clear();
+			for(Index index : indexes.values()) {
+				index.entries.clear();
+			}
+			nextId = 1;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Stores the given row, in every index. The caller
+	 * must hold the write lock, and own the object.
+	 * @param row - the row to store
+	 */
+	private void put(T row) {
+		int id = meta.getId(row);
+		rows.put(id, row);
+		ids.add(id);
+		for(Index index : indexes.values()) {
+			index.entries.computeIfAbsent(meta.get(row, index.column), v -> new TreeSet<Integer>()).add(id);
+		}
+	}
+
+	/**
+	 * Removes the row with the given id from every index.
+	 * The caller must hold the write lock.
+	 * @param id - the id of the row
+	 * @return The removed row, or null if there was none
+	 */
+	private T remove(int id) {
+		T row = rows.remove(id);
+		if(null == row) return null;
+
+		ids.remove(id);
+		for(Index index : indexes.values()) {
+			Object value = meta.get(row, index.column);
+			TreeSet<Integer> matching = index.entries.get(value);
+			matching.remove(id);
+			if(matching.isEmpty()) index.entries.remove(value);
+		}
+		return row;
+	}
+
+	private T copy(T t) {
+		T c = meta.newInstance();
+		for(int i = 0; i < meta.getColumnCount(); ++i) {
+			meta.set(c, i, meta.get(t, i));
+		}
+		return c;
+	}
+
+	private static class Index {
+		private final int column;
+		private final Map<Object, TreeSet<Integer>> entries = new HashMap<Object, TreeSet<Integer>>();
+
+		Index(int column) {
+			this.column = column;
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package dao.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The changes made to the in-memory tables by one transaction, kept
+ * so that they can be taken back should the transaction fail. Each
+ * change records how to undo itself; rolling back undoes them all,
+ * newest first.
+ */
+public class UndoLog {
+	private final List<Runnable> undos = new ArrayList<Runnable>();
+
+	/**
+	 * Records how to undo a change that was just made.
+	 * @param undo - puts things back as they were before the change
+	 */
+	void add(Runnable undo) { // Package-visible, for the tables
+		undos.add(undo);
+	}
+
+	/**
+	 * Takes over every change recorded by the given log,
+	 * as if they had been recorded by this one.
+	 * @param other - the log to take the changes of
+	 */
+	void addAll(UndoLog other) {
+		undos.addAll(other.undos);
+		other.undos.clear();
+	}
+
+	/**
+	 * Undoes every recorded change, newest first, then forgets them.
+	 * Must be called while still holding the database's write lock.
+	 */
+	public void rollback() {
+		for(int i = undos.size() - 1; i >= 0; --i) {
+			undos.get(i).run();
+		}
+		undos.clear();
+	}
+}
@@ -0,0 +1,25 @@
+package mapper;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Asks for a {@link RowMapper} to be generated for the annotated model
+ * class at compile time (by {@link mapper.processor.MapperProcessor}),
+ * so that the DAOs can map it without any reflection. The mapper is
+ * named after the class plus {@value RowMapper#SUFFIX}, in the same
+ * package, e.g. <code>model.ItemRowMapper</code> for <code>model.Item</code>.
+ * <br>
+ * The class must be top-level, have a public no-argument constructor,
+ * an <i>int id</i> field and JavaBean accessors for every field (e.g.
+ * through Lombok's @Data). Its columns are its non-static fields, in
+ * declaration order.
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface GenerateMapper {
+}
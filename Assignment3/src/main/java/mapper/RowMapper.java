@@ -0,0 +1,136 @@
+package mapper;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Moves one entity class between Java objects and JDBC: reads rows into
+ * new objects, binds objects as statement parameters, and gets or sets
+ * single columns. Implementations are either generated at compile time
+ * for classes marked with {@link GenerateMapper}, or (for any other
+ * class) built by reflection at run time.
+ * <br>
+ * Columns are numbered from 0, in the order of {@link #columns()}.
+ * @param <T> - the entity class
+ */
+public interface RowMapper<T> {
+	/**
+	 * What the name of a generated mapper adds to the name of its class.
+	 */
+	String SUFFIX = "RowMapper";
+
+	/**
+	 * Returns the column names, in order.
+	 * @return A new array of column names
+	 */
+	String[] columns();
+
+	/**
+	 * Returns the Java types of the columns, in order.
+	 * @return A new array of field types
+	 */
+	Class<?>[] columnTypes();
+
+	/**
+	 * Returns the index of the <i>id</i> column.
+	 * @return A column index
+	 */
+	int idIndex();
+
+	/**
+	 * Creates a new, empty entity.
+	 * @return A new instance of the entity class
+	 */
+	T newInstance();
+
+	/**
+	 * Finds where each column of the entity is in the given ResultSet,
+	 * so that its rows can be read by index rather than by name. This
+	 * only depends on the ResultSet's columns, so it is meant to be done
+	 * once per ResultSet, before reading any of its rows.
+	 * @param resultSet - a ResultSet with a column for every column of the entity
+	 * @return The (1-based) ResultSet index of every column, in column order
+	 * @throws SQLException if a column is missing from the ResultSet
+	 */
+	default int[] findColumns(ResultSet resultSet) throws SQLException {
+		String[] names = columns();
+		int[] indexes = new int[names.length];
+		for(int i = 0; i < names.length; ++i) {
+			indexes[i] = resultSet.findColumn(names[i]);
+		}
+		return indexes;
+	}
+
+	/**
+	 * Builds an entity from the current row of the given ResultSet,
+	 * reading every column with the getter of its type (getInt,
+	 * getBigDecimal, getString, ...). SQL NULL becomes null for object
+	 * fields (wrappers included) and leaves primitive fields at 0/false.
+	 * A column whose index is 0 was not selected (see dao.Projection);
+	 * its field is left as {@link #newInstance()} made it.
+	 * @param resultSet - a ResultSet positioned on a row
+	 * @param indexes - where the columns are, as per {@link #findColumns(ResultSet)}
+	 * @return A new entity holding that row's data
+	 * @throws SQLException if the ResultSet cannot be read
+	 */
+	T mapRow(ResultSet resultSet, int[] indexes) throws SQLException;
+
+	/**
+	 * Builds an entity from the current row of the given ResultSet, as per
+	 * {@link #mapRow(ResultSet, int[])}. Finds the columns anew, so when
+	 * reading more than one row, prefer {@link #findColumns(ResultSet)} and
+	 * {@link #mapRow(ResultSet, int[])}.
+	 * @param resultSet - a ResultSet positioned on a row, with a
+	 * 		column for every column of the entity
+	 * @return A new entity holding that row's data
+	 * @throws SQLException if the ResultSet cannot be read
+	 */
+	default T mapRow(ResultSet resultSet) throws SQLException {
+		return mapRow(resultSet, findColumns(resultSet));
+	}
+
+	/**
+	 * Binds every column of the given entity, in order,
+	 * as parameters of the given statement.
+	 * @param statement - the statement to fill in
+	 * @param t - the entity to take the values from
+	 * @param firstIndex - the parameter index of the first column
+	 * @return The index of the first parameter after the columns
+	 * @throws SQLException if a parameter cannot be set
+	 */
+	int bindColumns(PreparedStatement statement, T t, int firstIndex) throws SQLException;
+
+	/**
+	 * Binds one column of the given entity as a parameter
+	 * of the given statement, with the setter of its type.
+	 * @param statement - the statement to fill in
+	 * @param t - the entity to take the value from
+	 * @param column - a column index
+	 * @param index - the parameter index to bind it to
+	 * @throws SQLException if the parameter cannot be set
+	 */
+	void bindColumn(PreparedStatement statement, T t, int column, int index) throws SQLException;
+
+	int getId(T t);
+
+	void setId(T t, int id);
+
+	/**
+	 * Reads the value of one column from the given entity.
+	 * @param t - the entity
+	 * @param column - a column index
+	 * @return The (boxed) value of that column
+	 */
+	Object get(T t, int column);
+
+	/**
+	 * Writes the value of one column into the given entity.
+	 * Numbers are converted to the field's primitive type if
+	 * needed, and null leaves primitives at their default.
+	 * @param t - the entity
+	 * @param column - a column index
+	 * @param value - the new value
+	 */
+	void set(T t, int column, Object value);
+}
@@ -0,0 +1,282 @@
+package mapper.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+import mapper.GenerateMapper;
+import mapper.RowMapper;
+
+/**
+ * Generates a {@link RowMapper} for every class marked with
+ * {@link GenerateMapper}. The generated mappers call the classes'
+ * accessors directly and read every column with the ResultSet getter
+ * of its type, so the mapping has no reflection and no boxing in it.
+ * <br>
+ * Accessors are assumed to follow the JavaBean (and Lombok) naming:
+ * <i>getX</i>/<i>setX</i>, or <i>isX</i> for primitive booleans.
+ */
+@SupportedAnnotationTypes("mapper.GenerateMapper")
+public class MapperProcessor extends AbstractProcessor {
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for(Element element : roundEnv.getElementsAnnotatedWith(GenerateMapper.class)) {
+			if(ElementKind.CLASS != element.getKind()
+					|| NestingKind.TOP_LEVEL != ((TypeElement) element).getNestingKind()) {
+				error(element, "@GenerateMapper only applies to top-level classes");
+				continue;
+			}
+			generate((TypeElement) element);
+		}
+		return true;
+	}
+
+	private void generate(TypeElement type) {
+		List<Column> columns = new ArrayList<Column>();
+		int idIndex = -1;
+		for(Element member : type.getEnclosedElements()) { // In declaration order
+			if(ElementKind.FIELD != member.getKind() || member.getModifiers().contains(Modifier.STATIC)) continue;
+			Column column = new Column((VariableElement) member, processingEnv.getTypeUtils());
+			if("id".equals(column.name) && TypeKind.INT == column.kind) idIndex = columns.size();
+			columns.add(column);
+		}
+		if(-1 == idIndex) {
+			error(type, type.getSimpleName() + " has no int id field");
+			return;
+		}
+
+		String packageName = ((PackageElement) type.getEnclosingElement()).getQualifiedName().toString();
+		String entity = type.getSimpleName().toString();
+		String mapperName = entity + RowMapper.SUFFIX;
+		String qualifiedName = packageName.isEmpty() ? mapperName : packageName + "." + mapperName;
+
+		try (PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter())) {
+			if(!packageName.isEmpty()) {
+				out.println("package " + packageName + ";");
+				out.println();
+			}
+			out.println("/**");
+			out.println(" * The {@link mapper.RowMapper} of {@link " + entity + "}.");
+			out.println(" * Generated by " + MapperProcessor.class.getName() + "; do not edit.");
+			out.println(" */");
+			out.println("public final class " + mapperName + " implements mapper.RowMapper<" + entity + "> {");
+
+			StringBuilder names = new StringBuilder();
+			StringBuilder types = new StringBuilder();
+			for(Column c : columns) {
+				if(names.length() > 0) {
+					names.append(", ");
+					types.append(", ");
+				}
+				names.append('"').append(c.name).append('"');
+				types.append(c.type).append(".class");
+			}
+			out.println("\tprivate static final String[] COLUMNS = { " + names + " };");
+			out.println("\tprivate static final Class<?>[] COLUMN_TYPES = { " + types + " };");
+			out.println();
+			out.println("\tpublic String[] columns() {");
+			out.println("\t\treturn COLUMNS.clone();");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic Class<?>[] columnTypes() {");
+			out.println("\t\treturn COLUMN_TYPES.clone();");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic int idIndex() {");
+			out.println("\t\treturn " + idIndex + ";");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic " + entity + " newInstance() {");
+			out.println("\t\treturn new " + entity + "();");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic " + entity + " mapRow(java.sql.ResultSet resultSet, int[] indexes) throws java.sql.SQLException {");
+			out.println("\t\t" + entity + " t = new " + entity + "();");
+			for(int i = 0; i < columns.size(); ++i) {
+				Column c = columns.get(i);
+				String index = "indexes[" + i + "]";
+				String boxed = c.boxedJdbcType();
+				out.println("\t\tif(0 != " + index + ") {"); // Not selected otherwise
+				if(null != boxed) { // The primitive getter gives 0 for NULL, so check for it
+					out.println("\t\t\t" + boxed + " v" + i + " = resultSet.get" + boxed.substring(0, 1).toUpperCase()
+							+ boxed.substring(1) + "(" + index + ");");
+					out.println("\t\t\tt." + c.setter + "(resultSet.wasNull() ? null : (" + c.type + ") v" + i + ");");
+				} else {
+					out.println("\t\t\tt." + c.setter + "(" + c.read("resultSet", index) + ");");
+				}
+				out.println("\t\t}");
+			}
+			out.println("\t\treturn t;");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic int bindColumns(java.sql.PreparedStatement statement, " + entity
+					+ " t, int firstIndex) throws java.sql.SQLException {");
+			out.println("\t\tint index = firstIndex;");
+			for(Column c : columns) {
+				out.println("\t\t" + c.bind("statement", "index++", "t." + c.getter + "()") + ";");
+			}
+			out.println("\t\treturn index;");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic void bindColumn(java.sql.PreparedStatement statement, " + entity
+					+ " t, int column, int index) throws java.sql.SQLException {");
+			out.println("\t\tswitch(column) {");
+			for(int i = 0; i < columns.size(); ++i) {
+				Column c = columns.get(i);
+				out.println("\t\tcase " + i + ": " + c.bind("statement", "index", "t." + c.getter + "()") + "; break;");
+			}
+			out.println("\t\tdefault: throw new IndexOutOfBoundsException(\"No column \" + column + \" in " + entity + "\");");
+			out.println("\t\t}");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic int getId(" + entity + " t) {");
+			out.println("\t\treturn t.getId();");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic void setId(" + entity + " t, int id) {");
+			out.println("\t\tt.setId(id);");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic Object get(" + entity + " t, int column) {");
+			out.println("\t\tswitch(column) {");
+			for(int i = 0; i < columns.size(); ++i) {
+				out.println("\t\tcase " + i + ": return t." + columns.get(i).getter + "();");
+			}
+			out.println("\t\tdefault: throw new IndexOutOfBoundsException(\"No column \" + column + \" in " + entity + "\");");
+			out.println("\t\t}");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic void set(" + entity + " t, int column, Object value) {");
+			out.println("\t\tswitch(column) {");
+			for(int i = 0; i < columns.size(); ++i) {
+				Column c = columns.get(i);
+				out.println("\t\tcase " + i + ": t." + c.setter + "(" + c.convert("value") + "); break;");
+			}
+			out.println("\t\tdefault: throw new IndexOutOfBoundsException(\"No column \" + column + \" in " + entity + "\");");
+			out.println("\t\t}");
+			out.println("\t}");
+			out.println("}");
+		} catch (IOException e) {
+			error(type, "Could not write " + qualifiedName + ": " + e.getMessage());
+		}
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+
+	/**
+	 * One field of a model class, and how to move it in and out of JDBC.
+	 */
+	private static class Column {
+		private final String name;
+		private final TypeKind kind;
+		private final String type; // Erased and fully qualified, e.g. "int" or "java.math.BigDecimal"
+		private final String getter;
+		private final String setter;
+
+		Column(VariableElement field, Types types) {
+			name = field.getSimpleName().toString();
+			kind = field.asType().getKind();
+			type = types.erasure(field.asType()).toString();
+
+			String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+			getter = (TypeKind.BOOLEAN == kind ? "is" : "get") + capitalized;
+			setter = "set" + capitalized;
+		}
+
+		/**
+		 * The JDBC getter/setter suffix for this column's type,
+		 * or null if it has none (and goes through getObject).
+		 */
+		private String jdbcType() {
+			switch(kind) {
+			case INT: return "Int";
+			case LONG: return "Long";
+			case DOUBLE: return "Double";
+			case FLOAT: return "Float";
+			case SHORT: return "Short";
+			case BYTE: return "Byte";
+			case BOOLEAN: return "Boolean";
+			default: break;
+			}
+			if("java.lang.String".equals(type)) return "String";
+			if("java.math.BigDecimal".equals(type)) return "BigDecimal";
+			if("java.sql.Date".equals(type)) return "Date";
+			if("java.sql.Time".equals(type)) return "Time";
+			if("java.sql.Timestamp".equals(type)) return "Timestamp";
+			return null;
+		}
+
+		/**
+		 * The primitive type whose JDBC getter reads this column, if it
+		 * is a wrapper type (e.g. "int" for java.lang.Integer), or null.
+		 */
+		String boxedJdbcType() {
+			switch(type) {
+			case "java.lang.Integer": return "int";
+			case "java.lang.Long": return "long";
+			case "java.lang.Double": return "double";
+			case "java.lang.Float": return "float";
+			case "java.lang.Short": return "short";
+			case "java.lang.Byte": return "byte";
+			case "java.lang.Boolean": return "boolean";
+			default: return null;
+			}
+		}
+
+		String read(String resultSet, String column) {
+			String jdbc = jdbcType();
+			if(null != jdbc) return resultSet + ".get" + jdbc + "(" + column + ")";
+			if(kind.isPrimitive()) return "(" + type + ") " + resultSet + ".getObject(" + column + ")"; // e.g. char
+			return resultSet + ".getObject(" + column + ", " + type + ".class)";
+		}
+
+		String bind(String statement, String index, String value) {
+			String jdbc = jdbcType();
+			if(null != jdbc) return statement + ".set" + jdbc + "(" + index + ", " + value + ")";
+			return statement + ".setObject(" + index + ", " + value + ")";
+		}
+
+		/**
+		 * Converts a boxed value to this column's type, the same way
+		 * the reflective mapper does: any Number fits any numeric
+		 * primitive, and null leaves primitives at their default.
+		 */
+		String convert(String value) {
+			switch(kind) {
+			case INT: case LONG: case DOUBLE: case FLOAT: case SHORT: case BYTE:
+				return "null == " + value + " ? 0 : ((Number) " + value + ")." + type + "Value()";
+			case BOOLEAN:
+				return value + " instanceof Number ? 0 != ((Number) " + value + ").intValue() : Boolean.TRUE.equals(" + value + ")";
+			case CHAR:
+				return "null == " + value + " ? '\\0' : (Character) " + value;
+			default:
+				return "(" + type + ") " + value;
+			}
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies, in microseconds. Values are
+ * counted in log-linear buckets: every power of two is split into
+ * {@value #SUB_BUCKETS} equal buckets, so a percentile read from the
+ * histogram is never off by more than about 6%, while the whole
+ * range (up to days) fits in a few hundred counters.
+ * The maximum is kept exactly.
+ */
+class LatencyHistogram { // Package-visible, for OperationMetrics
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 40; // 2^40 us is about 12 days
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Counts one value.
+	 * @param micros - the latency, in microseconds
+	 */
+	void record(long micros) {
+		if(micros < 0) micros = 0;
+		counts.incrementAndGet(bucketOf(micros));
+		total.incrementAndGet();
+		max.accumulateAndGet(micros, Math::max);
+	}
+
+	/**
+	 * Returns the value below which the given fraction of the
+	 * recorded values fall, or 0 if nothing was recorded.
+	 * @param fraction - the percentile, as a number between 0 and 1
+	 * @return The (upper bound of the) percentile, in microseconds
+	 */
+	long percentile(double fraction) {
+		long count = total.get();
+		if(0 == count) return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(fraction * count));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; ++i) {
+			seen += counts.get(i);
+			if(seen >= rank) {
+				if(BUCKETS - 1 == i) return max.get(); // The last bucket has no upper bound
+				return Math.min(lowerBoundOf(i + 1) - 1, max.get());
+			}
+		}
+		return max.get(); // Values recorded while we were reading
+	}
+
+	long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Forgets every recorded value. Values recorded while the
+	 * histogram is being reset may or may not be kept.
+	 */
+	void reset() {
+		for(int i = 0; i < BUCKETS; ++i) {
+			counts.set(i, 0);
+		}
+		total.set(0);
+		max.set(0);
+	}
+
+	/**
+	 * Returns the bucket the given value is counted in.
+	 * @param value - a latency, not negative
+	 * @return The index of its bucket
+	 */
+	static int bucketOf(long value) {
+		if(value < SUB_BUCKETS) return (int) value;
+		int exponent = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_EXPONENT);
+		int sub = (int) (Math.min(value >>> (exponent - SUB_BUCKET_BITS), 2 * SUB_BUCKETS - 1)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Returns the smallest value counted in the given bucket.
+	 * @param bucket - the index of a bucket
+	 * @return The bucket's lower bound (inclusive)
+	 */
+	static long lowerBoundOf(int bucket) {
+		if(bucket < SUB_BUCKETS) return bucket;
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		return (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+	}
+}
@@ -0,0 +1,68 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The registry of every {@link OperationMetrics} in the application.
+ * Each is created the first time it is asked for, and published as an
+ * MBean on the platform MBean server, under the {@value #DOMAIN} domain:
+ * <ul>
+ * <li><code>warehouse:type=DAO,entity=Item,operation=findById</code> -
+ * one per DAO operation, per entity type</li>
+ * <li><code>warehouse:type=ConnectionPool,operation=getConnection</code> -
+ * the time spent waiting for a pooled connection</li>
+ * </ul>
+ * Any JMX client can read them, e.g. <code>jconsole</code> attached
+ * to the running application.
+ */
+public final class Metrics {
+	private static final Logger LOGGER = Logger.getLogger(Metrics.class.getName());
+
+	public static final String DOMAIN = "warehouse";
+
+	private static final ConcurrentMap<String, OperationMetrics> ALL = new ConcurrentHashMap<String, OperationMetrics>();
+
+	private Metrics() {
+		// Static helper; not meant to be instantiated
+	}
+
+	/**
+	 * Returns the metrics of the given DAO operation on the given
+	 * entity type, creating (and publishing) them on first use.
+	 * @param entity - the simple name of the model class, e.g. "Item"
+	 * @param operation - the name of the operation, e.g. "findById"
+	 * @return The OperationMetrics
+	 */
+	public static OperationMetrics forDao(String entity, String operation) {
+		return get("type=DAO,entity=" + entity + ",operation=" + operation);
+	}
+
+	/**
+	 * Returns the metrics of the given connection pool operation,
+	 * creating (and publishing) them on first use.
+	 * @param operation - the name of the operation, e.g. "getConnection"
+	 * @return The OperationMetrics
+	 */
+	public static OperationMetrics forConnectionPool(String operation) {
+		return get("type=ConnectionPool,operation=" + operation);
+	}
+
+	private static OperationMetrics get(String properties) {
+		return ALL.computeIfAbsent(properties, p -> {
+			OperationMetrics metrics = new OperationMetrics();
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(DOMAIN + ":" + p));
+			} catch (JMException e) { // Still counted, just not visible over JMX
+				LOGGER.log(Level.WARNING, "Metrics: could not publish " + p + " " + e.getMessage());
+			}
+			return metrics;
+		});
+	}
+}
@@ -0,0 +1,80 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The counters and latency histogram of one kind of operation (e.g.
+ * findById on Items), published over JMX by {@link Metrics}. Safe to
+ * update from any number of threads at once.
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong rows = new AtomicLong();
+	private final AtomicLong totalMicros = new AtomicLong();
+	private final LatencyHistogram latencies = new LatencyHistogram();
+
+	OperationMetrics() { // Package-visible, everyone else goes through Metrics
+	}
+
+	/**
+	 * Starts timing one call of this operation. The timer must be
+	 * closed when the call ends, preferably by a try-with-resources.
+	 * @return A running OperationTimer
+	 */
+	public OperationTimer start() {
+		return new OperationTimer(this);
+	}
+
+	/**
+	 * Records one finished call of this operation.
+	 * @param nanos - how long the call took, in nanoseconds
+	 * @param rowCount - the rows the call returned or affected
+	 * @param failed - whether the call failed
+	 */
+	public void record(long nanos, long rowCount, boolean failed) {
+		long micros = nanos / 1000;
+		calls.incrementAndGet();
+		if(failed) errors.incrementAndGet();
+		rows.addAndGet(rowCount);
+		totalMicros.addAndGet(micros);
+		latencies.record(micros);
+	}
+
+	public long getCalls() {
+		return calls.get();
+	}
+
+	public long getErrors() {
+		return errors.get();
+	}
+
+	public long getRows() {
+		return rows.get();
+	}
+
+	public double getLatencyMeanMicros() {
+		long count = calls.get();
+		return 0 == count ? 0.0 : (double) totalMicros.get() / count;
+	}
+
+	public long getLatencyP50Micros() {
+		return latencies.percentile(0.50);
+	}
+
+	public long getLatencyP99Micros() {
+		return latencies.percentile(0.99);
+	}
+
+	public long getLatencyMaxMicros() {
+		return latencies.getMax();
+	}
+
+	public void reset() {
+		calls.set(0);
+		errors.set(0);
+		rows.set(0);
+		totalMicros.set(0);
+		latencies.reset();
+	}
+}
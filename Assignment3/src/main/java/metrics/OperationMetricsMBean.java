@@ -0,0 +1,26 @@
+package metrics;
+
+/**
+ * The management interface of {@link OperationMetrics}, as seen
+ * through JMX (e.g. in JConsole or VisualVM). Latencies are in
+ * microseconds.
+ */
+public interface OperationMetricsMBean {
+	long getCalls();
+	
+	/** Calls that failed, whether by throwing or by giving up */
+	long getErrors();
+	
+	/** Rows returned (reads) or affected (writes), over all calls */
+	long getRows();
+	
+	double getLatencyMeanMicros();
+	long getLatencyP50Micros();
+	long getLatencyP99Micros();
+	long getLatencyMaxMicros();
+	
+	/**
+	 * Sets every counter back to zero.
+	 */
+	void reset();
+}
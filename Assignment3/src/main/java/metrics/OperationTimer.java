@@ -0,0 +1,63 @@
+package metrics;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Times one call of an operation, and records it in the operation's
+ * {@link OperationMetrics} when closed. A call that is closed without
+ * having been marked {@link #done(Object) done} counts as an error,
+ * so the usual pattern is:
+ * <pre>
+ * try (OperationTimer timer = metrics.start()) {
+ *     ...
+ *     return timer.done(result);
+ * } catch (SQLException e) {
+ *     ... // Counted as an error, since done() was never reached
+ * }
+ * </pre>
+ */
+public final class OperationTimer implements AutoCloseable {
+	private final OperationMetrics metrics;
+	private final long start = System.nanoTime();
+	private long rows = 0;
+	private boolean done = false;
+
+	OperationTimer(OperationMetrics metrics) { // Package-visible, see OperationMetrics.start()
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Marks the call as successful, counting the rows of its result:
+	 * the size of a collection or map, the value of an Integer (rows
+	 * affected), 1 or 0 for a Boolean, 0 for null and 1 for anything
+	 * else (a single row).
+	 * @param result - the result of the call
+	 * @return The same result, so that it can be returned straight away
+	 */
+	public <R> R done(R result) {
+		if(null == result) rows = 0;
+		else if(result instanceof Collection) rows = ((Collection<?>) result).size();
+		else if(result instanceof Map) rows = ((Map<?, ?>) result).size();
+		else if(result instanceof Integer) rows = (Integer) result;
+		else if(result instanceof Boolean) rows = ((Boolean) result) ? 1 : 0;
+		else rows = 1;
+		done = true;
+		return result;
+	}
+
+	/**
+	 * Marks the call as successful, having returned or affected no rows.
+	 */
+	public void done() {
+		done(null);
+	}
+
+	/**
+	 * Records the call; as an error, unless it was marked done.
+	 */
+	@Override
+	public void close() {
+		metrics.record(System.nanoTime() - start, rows, !done);
+	}
+}
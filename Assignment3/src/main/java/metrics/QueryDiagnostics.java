@@ -0,0 +1,224 @@
+package metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A diagnostic mode that watches every SQL statement the application
+ * runs, to catch N+1 query patterns and slow queries before they ship.
+ * It is off unless started with <code>-D{@value #PROPERTY}=true</code>,
+ * and then:
+ * <ul>
+ * <li>any statement slower than {@value #SLOW_QUERY_PROPERTY} (100 ms
+ * by default) is logged, with its bound parameters</li>
+ * <li>statements are counted per logical operation (see {@link #begin(String)},
+ * e.g. one manager call); when the operation ends, a summary of its
+ * queries is logged, and any identical statement that ran more than
+ * {@value #REPEAT_THRESHOLD_PROPERTY} (5 by default) times is flagged
+ * as a likely N+1</li>
+ * </ul>
+ * When the mode is off, statements are not wrapped at all, so
+ * there is nothing to pay for it.
+ */
+public final class QueryDiagnostics {
+	private static final Logger LOGGER = Logger.getLogger(QueryDiagnostics.class.getName());
+
+	/**
+	 * The name of the system property that turns the mode on.
+	 */
+	public static final String PROPERTY = "warehouse.diagnostics";
+	/**
+	 * The name of the system property giving how many times the same
+	 * statement may run in one operation before it is flagged.
+	 */
+	public static final String REPEAT_THRESHOLD_PROPERTY = "warehouse.diagnostics.repeatThreshold";
+	/**
+	 * The name of the system property giving the latency,
+	 * in milliseconds, above which a statement is logged.
+	 */
+	public static final String SLOW_QUERY_PROPERTY = "warehouse.diagnostics.slowQueryMillis";
+
+	private static final boolean ENABLED = Boolean.getBoolean(PROPERTY);
+	private static final int REPEAT_THRESHOLD = Integer.getInteger(REPEAT_THRESHOLD_PROPERTY, 5);
+	private static final long SLOW_QUERY_NANOS = Long.getLong(SLOW_QUERY_PROPERTY, 100) * 1000000L;
+
+	private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<Scope>();
+	private static final Scope NOT_TRACKED = new Scope(null);
+
+	private QueryDiagnostics() {
+		// Static helper; not meant to be instantiated
+	}
+
+	/**
+	 * Tells whether the diagnostic mode is on.
+	 * @return True if statements are being watched
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * Starts a logical operation on the calling thread; every statement
+	 * the thread runs until the returned scope is closed is counted
+	 * towards it. Operations started while another one is running on
+	 * the same thread are part of the outer one.
+	 * <pre>
+	 * try (QueryDiagnostics.Scope scope = QueryDiagnostics.begin("OrderManager.getAll")) {
+	 *     ...
+	 * }
+	 * </pre>
+	 * @param operation - the name of the operation, for the summary
+	 * @return The scope of the operation, to be closed when it ends
+	 */
+	public static Scope begin(String operation) {
+		if(!ENABLED || null != CURRENT.get()) return NOT_TRACKED;
+
+		Scope scope = new Scope(operation);
+		CURRENT.set(scope);
+		return scope;
+	}
+
+	/**
+	 * Wraps the given statement so that its executions are watched,
+	 * if the diagnostic mode is on; otherwise returns it as it is.
+	 * @param statement - the statement to watch
+	 * @param sql - the statement's SQL
+	 * @return The statement to hand out instead
+	 */
+	public static PreparedStatement track(PreparedStatement statement, String sql) {
+		if(!ENABLED) return statement;
+		return (PreparedStatement) Proxy.newProxyInstance(QueryDiagnostics.class.getClassLoader(),
+				new Class<?>[] { PreparedStatement.class }, new TrackedStatement(statement, sql));
+	}
+
+	/**
+	 * Returns the statement wrapped by {@link #track(PreparedStatement,
+	 * String)}, or the given statement if it is not wrapped.
+	 * @param statement - a statement, possibly wrapped
+	 * @return The actual statement
+	 */
+	public static Statement unwrap(Statement statement) {
+		if(ENABLED && Proxy.isProxyClass(statement.getClass())) {
+			InvocationHandler handler = Proxy.getInvocationHandler(statement);
+			if(handler instanceof TrackedStatement) return ((TrackedStatement) handler).target;
+		}
+		return statement;
+	}
+
+	/**
+	 * Counts one execution of a statement towards the current
+	 * operation, and logs it if it was slow.
+	 */
+	private static void executed(String sql, long nanos, List<Object> params, int batchSize) {
+		Scope scope = CURRENT.get();
+		if(null != scope) scope.count(sql, nanos);
+
+		if(nanos > SLOW_QUERY_NANOS) {
+			LOGGER.log(Level.WARNING, "Slow query (" + nanos / 1000000 + " ms"
+					+ (batchSize > 0 ? ", batch of " + batchSize : "")
+					+ (null != scope ? ", in " + scope.operation : "") + "): "
+					+ sql + " " + params);
+		}
+	}
+
+	/**
+	 * One logical operation, and the statements it ran.
+	 */
+	public static final class Scope implements AutoCloseable {
+		private final String operation;
+		private final long start = System.nanoTime();
+		private final Map<String, long[]> statements = new LinkedHashMap<String, long[]>(); // SQL -> {count, nanos}
+		private int total = 0;
+
+		private Scope(String operation) {
+			this.operation = operation;
+		}
+
+		private void count(String sql, long nanos) {
+			long[] stats = statements.computeIfAbsent(sql, s -> new long[2]);
+			++stats[0];
+			stats[1] += nanos;
+			++total;
+		}
+
+		/**
+		 * Ends the operation, and logs its summary.
+		 */
+		@Override
+		public void close() {
+			if(this == NOT_TRACKED) return;
+			CURRENT.remove();
+
+			long millis = (System.nanoTime() - start) / 1000000;
+			LOGGER.log(Level.INFO, operation + ": " + total + " statements (" + statements.size()
+					+ " distinct) in " + millis + " ms");
+			for(Map.Entry<String, long[]> e : statements.entrySet()) {
+				long[] stats = e.getValue();
+				if(stats[0] > REPEAT_THRESHOLD) {
+					LOGGER.log(Level.WARNING, "Possible N+1 in " + operation + ": ran " + stats[0]
+							+ " times (" + stats[1] / 1000000 + " ms in all): " + e.getKey());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stands in for a PreparedStatement, remembering the parameters
+	 * bound to it and timing its executions.
+	 */
+	private static class TrackedStatement implements InvocationHandler {
+		private final PreparedStatement target;
+		private final String sql;
+		private final List<Object> params = new ArrayList<Object>();
+		private int batchSize = 0;
+
+		TrackedStatement(PreparedStatement target, String sql) {
+			this.target = target;
+			this.sql = sql;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			boolean execution = name.startsWith("execute") && (null == args || 0 == args.length);
+
+			long start = System.nanoTime();
+			Object result;
+			try {
+				result = method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			} finally {
+				if(execution) {
+					executed(sql, System.nanoTime() - start, new ArrayList<Object>(params), batchSize);
+					batchSize = 0;
+				}
+			}
+
+			if(name.startsWith("set") && null != args && args.length >= 2 && args[0] instanceof Integer) {
+				int index = (Integer) args[0];
+				while(params.size() < index) {
+					params.add(null);
+				}
+				params.set(index - 1, args[1]);
+			} else if("clearParameters".equals(name)) {
+				params.clear();
+			} else if("addBatch".equals(name)) {
+				++batchSize;
+			} else if("clearBatch".equals(name)) {
+				batchSize = 0;
+			}
+			return result;
+		}
+	}
+}
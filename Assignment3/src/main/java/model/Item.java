@@ -3,8 +3,10 @@ package model;
 import java.math.BigDecimal;
 
 import lombok.Data;
+import mapper.GenerateMapper;
 
 @Data
+@GenerateMapper
 public class Item {
 	private int id;
 	private String name;
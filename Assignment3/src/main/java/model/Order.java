@@ -1,9 +1,15 @@
 package model;
 
+import java.math.BigDecimal;
+
 import lombok.Data;
+import mapper.GenerateMapper;
 
 @Data
+@GenerateMapper
 public class Order {
 	int id;
 	int user_id;
+	int noOfItems; // Kept up to date as the order's items change
+	BigDecimal totalPrice = BigDecimal.ZERO;
 }
@@ -1,8 +1,10 @@
 package model;
 
 import lombok.Data;
+import mapper.GenerateMapper;
 
 @Data
+@GenerateMapper
 public class OrderItem {
 	private int id;
 	private int order_id;
@@ -0,0 +1,23 @@
+package model;
+
+import java.math.BigDecimal;
+
+import lombok.Data;
+import mapper.GenerateMapper;
+
+/**
+ * An OrderItem together with the name and price of the Item
+ * it refers to, as read by a single join query (see
+ * {@link dao.OrderItemDAO#findLinesByOrderId(int)}).
+ * This is a read-only view: it has no table of its own.
+ */
+@Data
+@GenerateMapper
+public class OrderItemLine {
+	private int id;
+	private int order_id;
+	private int item_id;
+	private int amount;
+	private String itemName;
+	private BigDecimal price;
+}
@@ -0,0 +1,20 @@
+package model;
+
+import java.math.BigDecimal;
+
+import lombok.Data;
+import mapper.GenerateMapper;
+
+/**
+ * An Order together with its aggregates, as computed by the
+ * database in one go (see {@link dao.OrderDAO#findAllSummaries()}).
+ * This is a read-only view: it has no table of its own.
+ */
+@Data
+@GenerateMapper
+public class OrderSummary {
+	private int id;
+	private int user_id;
+	private int noOfItems;
+	private BigDecimal totalPrice; // Null for an order with no items
+}
@@ -1,8 +1,10 @@
 package model;
 
 import lombok.Data;
+import mapper.GenerateMapper;
 
 @Data
+@GenerateMapper
 public class User {
 	private int id;
 	private String email;
@@ -106,6 +106,16 @@ public class CartView extends JFrame {
 		table.repaint();
 	}
 	
+	/**
+	 * Deletes the first entry that matches the
+	 * given element from the view's table.
+	 * @param dto - the element to delete
+	 */
+	public void deleteData(OrderItemDTO dto) {
+		tableModel.deleteData(dto);
+		table.repaint();
+	}
+	
 	/**
 	 * Returns the currently selected row in the view's table.
 	 * Returns -1 if no row is selected
@@ -228,6 +238,10 @@ public class CartView extends JFrame {
         	data.remove(row);
         	//fireTableDataChanged();
         }
+        
+        public void deleteData(OrderItemDTO elem) {
+        	data.remove(elem);
+        }
 
 		public Object getValueAt(int row, int col) {
 			switch(col) {
@@ -0,0 +1,224 @@
+package presentation;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * The table model behind a {@link GenericView}: shows a list of
+ * elements with one column per declared field, found by reflection.
+ * @param <T> - the type of the elements shown
+ */
+class GenericTableModel<T> extends AbstractTableModel { // Package-visible
+	/**
+	 * Also required, also non-needed.
+	 */
+	private static final long serialVersionUID = -8682578178567079570L;
+
+	private Field[] fields;
+	private Class<?> type;
+	
+	private final List<String> columnNames = new ArrayList<String>();
+	private List<T> data;
+	// Row of every element, by id; kept in step with data by every method that changes it
+	private transient MethodHandle idGetter; // Null if the type has no getId()
+	private transient IdIndex index;
+	
+	/**
+	 * For subclasses that keep their rows some other way;
+	 * they override every method that touches the rows.
+	 * @param type - the type of the elements shown
+	 */
+	protected GenericTableModel(Class<?> type) {
+		this(null, type);
+	}
+	
+	public GenericTableModel(List<T> data, Class<?> type) {
+		this.data = data;
+		this.type = type;
+		
+		// Use reflection to generate the column names
+		fields = type.getDeclaredFields();
+		for(Field f : fields) {
+			columnNames.add(f.getName());
+		}
+		
+		if(null != data) { // Subclasses keeping their own rows find them their own way
+			idGetter = findIdGetter();
+			if(null != idGetter) {
+				index = new IdIndex(data.size());
+				for(int i = 0; i < data.size(); ++i) {
+					index.put(idOf(data.get(i)), i);
+				}
+			}
+		}
+	}
+	
+	public int getColumnCount() {
+            return columnNames.size();
+        }
+
+        public int getRowCount() {
+            return data.size();
+        }
+        
+        public String getColumnName(int col) {
+            return columnNames.get(col);
+        }
+        
+        public T getDataAtRow(int row) {
+        	return data.get(row);
+        }
+        
+        public void setDataAtRow(int row, T elem) {
+        	T old = data.set(row, elem);
+        	if(null != idGetter) {
+        		unindex(old, row);
+        		index.put(idOf(elem), row);
+        	}
+        	fireTableRowsUpdated(row, row);
+        }
+        
+        public void addDataRow(T elem) {
+        	data.add(elem);
+        	if(null != idGetter) index.put(idOf(elem), data.size() - 1);
+        	fireTableRowsInserted(data.size() - 1, data.size() - 1);
+        }
+        
+        public void deleteDataRow(int row) {
+        	T old = data.remove(row);
+        	if(null != idGetter) {
+        		unindex(old, row);
+        		for(int i = row; i < data.size(); ++i) { // The rows after it moved up by one
+        			index.put(idOf(data.get(i)), i);
+        		}
+        	}
+        	fireTableRowsDeleted(row, row);
+        }
+        
+        public void updateData(T elem) {
+        	if(null == idGetter) return;
+        	int row = index.get(idOf(elem));
+        	if(row < 0) return; // Not shown
+        	data.set(row, elem);
+        	fireTableRowsUpdated(row, row);
+        }
+        
+        public void deleteData(T data) {
+        	if(null == idGetter) {
+        		this.data.remove(data);
+        		fireTableDataChanged();
+        		return;
+        	}
+        	int row = index.get(idOf(data));
+        	if(row >= 0) deleteDataRow(row);
+        }
+
+        /**
+         * Finds the getId() method of the shown type, once.
+         * @return A handle taking an element and returning its id,
+         * 		or null if the type has no such method
+         */
+        private MethodHandle findIdGetter() {
+        	try {
+			return MethodHandles.publicLookup().findVirtual(type, "getId", MethodType.methodType(int.class))
+					.asType(MethodType.methodType(int.class, Object.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			return null; // Rows can only be found by position then
+		}
+        }
+        
+        private void unindex(T elem, int row) {
+        	int id = idOf(elem);
+        	if(index.get(id) == row) index.remove(id); // Unless a later row has the same id
+        }
+        
+        private int idOf(T elem) {
+        	try {
+			return (int) idGetter.invokeExact((Object) elem);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) { // getId() declares no checked exception
+			throw new IllegalStateException(e);
+		}
+        }
+
+        public Object getValueAt(int row, int col) {
+        	Object result = new Object();
+        	T elem = getDataAtRow(row);
+        	if(null == elem) return null; // Not loaded yet
+        	
+            boolean temp = fields[col].isAccessible();
+            fields[col].setAccessible(true);
+            try {
+			result = fields[col].get(elem);
+		} catch (IllegalArgumentException e) { // TODO: handle catch blocks, as always!
+			e.printStackTrace();
+		} catch (IllegalAccessException e) {
+			e.printStackTrace();
+		}
+            fields[col].setAccessible(temp);
+            
+            return result;
+        }
+        
+        public Class<?> getColumnClass(int col) {
+        	return toWrapper(fields[col].getType());
+        }
+        
+        public boolean isCellEditable(int row, int col) {
+            if(0 == col) return false;
+            else return true;
+        }
+        
+        public void setValueAt(Object value, int row, int col) {
+        	
+            T elem = getDataAtRow(row);
+            if(null == elem || Objects.equals(value, getValueAt(row, col))) return; // Edited, but not changed
+        	
+            boolean temp = fields[col].isAccessible();
+            fields[col].setAccessible(true);
+            try {
+			fields[col].set(elem, value);
+		} catch (IllegalArgumentException e) { // TODO: handle catch blocks, as always!
+			e.printStackTrace();
+		} catch (IllegalAccessException e) {
+			e.printStackTrace();
+		}
+            fields[col].setAccessible(temp);
+            
+            fireTableCellUpdated(row, col);
+        }
+        
+        private Class<?> toWrapper(Class<?> clazz) {
+            if (!clazz.isPrimitive())
+                return clazz;
+
+            if (clazz == Integer.TYPE)
+                return Integer.class;
+            if (clazz == Long.TYPE)
+                return Long.class;
+            if (clazz == Boolean.TYPE)
+                return Boolean.class;
+            if (clazz == Byte.TYPE)
+                return Byte.class;
+            if (clazz == Character.TYPE)
+                return Character.class;
+            if (clazz == Float.TYPE)
+                return Float.class;
+            if (clazz == Double.TYPE)
+                return Double.class;
+            if (clazz == Short.TYPE)
+                return Short.class;
+            if (clazz == Void.TYPE)
+                return Void.class;
+
+            return clazz;
+        }
+}
@@ -3,12 +3,7 @@ package presentation;
 import java.awt.BorderLayout;
 import java.awt.GridLayout;
 import java.awt.event.ActionListener;
-import java.beans.IntrospectionException;
-import java.beans.PropertyDescriptor;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.ArrayList;
+import java.awt.event.WindowListener;
 import java.util.List;
 
 import javax.swing.JButton;
@@ -19,7 +14,6 @@ import javax.swing.JTable;
 import javax.swing.ListSelectionModel;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.event.TableModelListener;
-import javax.swing.table.AbstractTableModel;
 
 
 public class GenericView<T> extends JFrame {
@@ -35,7 +29,7 @@ public class GenericView<T> extends JFrame {
 	private JPanel mainPane;
 	
 	private JScrollPane tablePane;
-	private GenericTableModel tableModel;
+	private GenericTableModel<T> tableModel;
 	private JTable table;
 	
 	private JPanel buttonPane;
@@ -74,6 +68,22 @@ public class GenericView<T> extends JFrame {
 		initialize(data);
 	}
 	
+	/**
+	 * Creates a new GenericView showing the elements of the given
+	 * source, loading only the pages the user scrolls to (see
+	 * {@link VirtualTableModel}), so that opening it costs the same
+	 * however many elements there are. Rows not loaded yet show up
+	 * blank, and their data is null. The new view will initially be
+	 * invisible and must be made visible externally.
+	 * @param source - where the elements come from
+	 * @param type - the type of the elements displayed
+	 */
+	public GenericView(PageSource<T> source, Class<?> type) {
+		this.type = type;
+		
+		initialize(new VirtualTableModel<T>(source, type));
+	}
+	
 	/**
 	 * Attaches the given listener to the data table, so that
 	 * it will be activated whenever an entry in the view changes.
@@ -113,6 +123,16 @@ public class GenericView<T> extends JFrame {
 		addButton.addActionListener(l);
 	}
 	
+	/**
+	 * Attaches the given listener to the view's window, so
+	 * that it will be activated e.g. whenever the user closes
+	 * (that is, hides) the view.
+	 * @param l - the WindowListener to attach
+	 */
+	public void attachCloseListener(WindowListener l) {
+		addWindowListener(l);
+	}
+	
 	/**
 	 * Returns the currently selected row in the view's table.
 	 * Returns -1 if no row is selected
@@ -145,6 +165,16 @@ public class GenericView<T> extends JFrame {
 		return tableModel.getDataAtRow(row);
 	}
 	
+	/**
+	 * Returns the name of the given column of the view's
+	 * table, that is, the name of the field it shows.
+	 * @param column - a column number
+	 * @return The name of the column
+	 */
+	public String getColumnName(int column) {
+		return tableModel.getColumnName(column);
+	}
+	
 	/**
 	 * Updates the element(s) in the view's table
 	 * that have the same "id" field as the given
@@ -219,9 +249,19 @@ public class GenericView<T> extends JFrame {
 	 * 		view's table with
 	 */
 	private void initialize(List<T> data) {
+		initialize(new GenericTableModel<T>(data, type));
+	}
+	
+	/**
+	 * Arranges all of the view's elements, initialises
+	 * any needed components and shows the given table model
+	 * in the view's table
+	 * @param model - the model holding the view's rows
+	 */
+	private void initialize(GenericTableModel<T> model) {
 		mainPane = new JPanel(new BorderLayout());
 		
-		tableModel = new GenericTableModel(data, type);
+		tableModel = model;
 		table = new JTable(tableModel);
 		table.setFillsViewportHeight(true);
 		table.setRowSelectionAllowed(true);
@@ -247,149 +287,4 @@ public class GenericView<T> extends JFrame {
 		setTitle(type.getSimpleName() + " View");
 	}
 	
-	private class GenericTableModel extends AbstractTableModel {
-		/**
-		 * Also required, also non-needed.
-		 */
-		private static final long serialVersionUID = -8682578178567079570L;
-
-		private Field[] fields;
-		private Class<?> type;
-		
-		private final List<String> columnNames = new ArrayList<String>();
-		private List<T> data;
-		
-		public GenericTableModel(List<T> data, Class<?> type) {
-			this.data = data;
-			this.type = type;
-			
-			// Use reflection to generate the column names
-			fields = type.getDeclaredFields();
-			for(Field f : fields) {
-				columnNames.add(f.getName());
-			}
-		}
-		
-		public int getColumnCount() {
-            return columnNames.size();
-        }
-
-        public int getRowCount() {
-            return data.size();
-        }
-        
-        public String getColumnName(int col) {
-            return columnNames.get(col);
-        }
-        
-        public T getDataAtRow(int row) {
-        	return data.get(row);
-        }
-        
-        public void setDataAtRow(int row, T elem) {
-        	data.set(row, elem);
-        }
-        
-        public void addDataRow(T elem) {
-        	data.add(elem);
-        }
-        
-        public void deleteDataRow(int row) {
-        	data.remove(row);
-        }
-        
-        public void updateData(T elem) {
-    		try {
-				PropertyDescriptor idDescr = new PropertyDescriptor("id", type);
-				Method getId = idDescr.getReadMethod();
-	        	for(int i = 0; i < data.size(); ++i) {
-	        			T t = data.get(i);
-						int id = (Integer) getId.invoke(t);
-						int dataId = (Integer) getId.invoke(elem);
-						if(id == dataId) data.set(i, elem);
-	        	}
-			} catch (IntrospectionException e) { // TODO: catches
-				e.printStackTrace();
-			} catch (IllegalAccessException e) {
-				e.printStackTrace();
-			} catch (IllegalArgumentException e) {
-				e.printStackTrace();
-			} catch (InvocationTargetException e) {
-				e.printStackTrace();
-			}
-        }
-        
-        public void deleteData(T data) {
-        	this.data.remove(data);
-        }
-
-        public Object getValueAt(int row, int col) {
-        	Object result = new Object();
-        	
-            boolean temp = fields[col].isAccessible();
-            fields[col].setAccessible(true);
-            try {
-				result = fields[col].get(data.get(row));
-			} catch (IllegalArgumentException e) { // TODO: handle catch blocks, as always!
-				e.printStackTrace();
-			} catch (IllegalAccessException e) {
-				e.printStackTrace();
-			}
-            fields[col].setAccessible(temp);
-            
-            return result;
-        }
-        
-        public Class<?> getColumnClass(int col) {
-        	return toWrapper(fields[col].getType());
-        }
-        
-        public boolean isCellEditable(int row, int col) {
-            if(0 == col) return false;
-            else return true;
-        }
-        
-        public void setValueAt(Object value, int row, int col) {
-        	
-            boolean temp = fields[col].isAccessible();
-            fields[col].setAccessible(true);
-            try {
-				fields[col].set(data.get(row), value);
-			} catch (IllegalArgumentException e) { // TODO: handle catch blocks, as always!
-				e.printStackTrace();
-			} catch (IllegalAccessException e) {
-				e.printStackTrace();
-			}
-            fields[col].setAccessible(temp);
-            
-            fireTableCellUpdated(row, col);
-        }
-        
-        private Class<?> toWrapper(Class<?> clazz) {
-            if (!clazz.isPrimitive())
-                return clazz;
-
-            if (clazz == Integer.TYPE)
-                return Integer.class;
-            if (clazz == Long.TYPE)
-                return Long.class;
-            if (clazz == Boolean.TYPE)
-                return Boolean.class;
-            if (clazz == Byte.TYPE)
-                return Byte.class;
-            if (clazz == Character.TYPE)
-                return Character.class;
-            if (clazz == Float.TYPE)
-                return Float.class;
-            if (clazz == Double.TYPE)
-                return Double.class;
-            if (clazz == Short.TYPE)
-                return Short.class;
-            if (clazz == Void.TYPE)
-                return Void.class;
-
-            return clazz;
-        }
-	}
-	
 }
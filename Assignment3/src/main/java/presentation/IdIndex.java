@@ -0,0 +1,115 @@
+package presentation;
+
+import java.util.Arrays;
+
+/**
+ * A map from element id to row number, kept in two plain int arrays
+ * (open addressing, linear probing), so that finding a row by id
+ * takes constant time, with no boxing and no per-entry objects.
+ */
+final class IdIndex { // Package-visible
+	private static final int NO_ROW = -1;
+
+	private int[] ids;
+	private int[] rows; // NO_ROW marks a free slot
+	private int shift; // 32 - log2(capacity)
+	private int size = 0;
+
+	IdIndex(int expected) {
+		int capacity = 16;
+		while(capacity < expected * 2) { // Kept at most half full
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	/**
+	 * Returns the row of the given id.
+	 * @param id - an element id
+	 * @return The row number, or -1 if the id is not in the index
+	 */
+	int get(int id) {
+		for(int slot = slotOf(id); ; slot = next(slot)) {
+			if(NO_ROW == rows[slot]) return NO_ROW;
+			if(ids[slot] == id) return rows[slot];
+		}
+	}
+
+	/**
+	 * Maps the given id to the given row, replacing any previous row.
+	 * @param id - an element id
+	 * @param row - its row number (not negative)
+	 */
+	void put(int id, int row) {
+		int slot = slotOf(id);
+		while(NO_ROW != rows[slot] && ids[slot] != id) {
+			slot = next(slot);
+		}
+		if(NO_ROW == rows[slot]) {
+			if(2 * (size + 1) > rows.length) {
+				grow();
+				put(id, row);
+				return;
+			}
+			++size;
+		}
+		ids[slot] = id;
+		rows[slot] = row;
+	}
+
+	/**
+	 * Takes the given id out of the index, if it is there.
+	 * @param id - an element id
+	 */
+	void remove(int id) {
+		int slot = slotOf(id);
+		while(ids[slot] != id) {
+			if(NO_ROW == rows[slot]) return; // Not there
+			slot = next(slot);
+		}
+		if(NO_ROW == rows[slot]) return;
+		rows[slot] = NO_ROW;
+		--size;
+
+		// Move back the entries that probed past the freed slot, so that they can still be found
+		for(int hole = slot, s = next(slot); NO_ROW != rows[s]; s = next(s)) {
+			int home = slotOf(ids[s]);
+			if((s > hole) ? (home <= hole || home > s) : (home <= hole && home > s)) {
+				ids[hole] = ids[s];
+				rows[hole] = rows[s];
+				rows[s] = NO_ROW;
+				hole = s;
+			}
+		}
+	}
+
+	void clear() {
+		Arrays.fill(rows, NO_ROW);
+		size = 0;
+	}
+
+	private int slotOf(int id) {
+		return (id * 0x9E3779B9) >>> shift; // Fibonacci hashing: the top bits of the product
+	}
+
+	private int next(int slot) {
+		return (slot + 1) & (rows.length - 1);
+	}
+
+	private void allocate(int capacity) {
+		ids = new int[capacity];
+		rows = new int[capacity];
+		Arrays.fill(rows, NO_ROW);
+		shift = 32 - Integer.numberOfTrailingZeros(capacity);
+	}
+
+	private void grow() {
+		int[] oldIds = ids;
+		int[] oldRows = rows;
+		allocate(rows.length << 1);
+		size = 0;
+		for(int i = 0; i < oldRows.length; ++i) {
+			if(NO_ROW != oldRows[i]) put(oldIds[i], oldRows[i]);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package presentation;
+
+import java.util.List;
+
+/**
+ * Where a {@link GenericView} opened on a large table gets its rows
+ * from, a page at a time, rather than all of them up front. Pages
+ * are key ranges: the elements are in increasing order of id, and a
+ * page is found by the id right before (or right after) it.
+ * <br>
+ * The methods are called away from the event dispatch thread,
+ * and may block.
+ * @param <T> - the type of the elements shown
+ */
+public interface PageSource<T> {
+	/**
+	 * Returns the number of elements there are.
+	 * @return The element count
+	 */
+	int count();
+
+	/**
+	 * Returns at most limit elements whose id is greater than
+	 * afterId, in increasing order of id.
+	 * @param afterId - the id right before the page (0 for the first)
+	 * @param limit - the most elements to return
+	 * @return The elements of the page
+	 */
+	List<T> page(int afterId, int limit);
+
+	/**
+	 * Returns at most limit elements whose id is less than
+	 * beforeId, in increasing order of id.
+	 * @param beforeId - the id right after the page
+	 * 		({@link Integer#MAX_VALUE} for the last)
+	 * @param limit - the most elements to return
+	 * @return The elements of the page
+	 */
+	List<T> pageBefore(int beforeId, int limit);
+
+	/**
+	 * Returns at most limit elements, starting with the one at the
+	 * given position in increasing order of id; used to jump to a
+	 * page far from any page already read.
+	 * @param offset - the number of elements to skip
+	 * @param limit - the most elements to return
+	 * @return The elements of the page
+	 */
+	List<T> pageAt(int offset, int limit);
+
+	/**
+	 * Returns the id of the given element.
+	 * @param t - an element
+	 * @return Its id
+	 */
+	int idOf(T t);
+}
@@ -0,0 +1,218 @@
+package presentation;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * A {@link GenericTableModel} that does not hold the whole table: it
+ * only knows how many rows there are, and loads the pages the table
+ * asks for, in the background, as the user scrolls. Rows not loaded
+ * yet show up blank until their page arrives. Opening a view on it
+ * costs one count, however large the table.
+ * <br>
+ * Every page costs one query. Next to a page already seen, it is read
+ * by key range (see {@link PageSource}), so scrolling down (or up) is
+ * cheap however far into the table it goes; far from any, e.g. when
+ * the scroll bar is dragged, it is read by position. The bounds of
+ * every page seen are remembered. At most {@value #MAX_CACHED_PAGES}
+ * pages are kept, the least recently shown going first, and the page
+ * after the one just loaded is fetched ahead of time. The rows of the
+ * loaded pages are indexed by id, so that updating one by id does not
+ * search the pages.
+ * <br>
+ * Adding or deleting a row shifts every page after it, so it drops
+ * the loaded pages; they are read again as they are shown.
+ * @param <T> - the type of the elements shown
+ */
+class VirtualTableModel<T> extends GenericTableModel<T> { // Package-visible
+	private static final long serialVersionUID = 4413364126218101581L;
+
+	private static final Logger LOGGER = Logger.getLogger(VirtualTableModel.class.getName());
+
+	static final int PAGE_SIZE = 100;
+	static final int MAX_CACHED_PAGES = 16;
+
+	// One thread for every view: pages are loaded one at a time, in the order asked for
+	private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "table-loader");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final transient PageSource<T> source;
+	private final int pageSize;
+
+	// Everything below is only touched on the event dispatch thread
+	private int rowCount;
+	private int[] firstIds; // Per page, kept after the page itself is dropped; 0 if not known
+	private int[] lastIds;
+	private final LinkedHashMap<Integer, List<T>> pages;
+	private final Set<Integer> loading = new HashSet<Integer>();
+	private final IdIndex index; // Row of every element of the loaded pages, by id
+	private int generation = 0; // Bumped whenever the pages are dropped, so that older loads are ignored
+
+	/**
+	 * Creates a model showing the elements of the given source,
+	 * counting them straight away but loading none of them.
+	 * @param source - where the rows come from
+	 * @param type - the type of the elements shown
+	 */
+	VirtualTableModel(PageSource<T> source, Class<?> type) {
+		this(source, type, PAGE_SIZE, MAX_CACHED_PAGES);
+	}
+
+	/**
+	 * Creates a model with the given page size and cache size.
+	 * @param source - where the rows come from
+	 * @param type - the type of the elements shown
+	 * @param pageSize - the number of rows read at once
+	 * @param maxPages - the most pages kept at once
+	 */
+	VirtualTableModel(PageSource<T> source, Class<?> type, int pageSize, int maxPages) {
+		super(type);
+		this.source = source;
+		this.pageSize = pageSize;
+		this.index = new IdIndex(pageSize * maxPages);
+		this.pages = new LinkedHashMap<Integer, List<T>>(16, 0.75f, true) { // Access-ordered, for LRU
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Integer, List<T>> eldest) {
+				if(size() <= maxPages) return false;
+				unindex(eldest.getKey(), eldest.getValue());
+				return true;
+			}
+		};
+		reset(source.count());
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Returns the element at the given row, if its page is loaded.
+	 * Otherwise, starts loading it and returns null for now; the
+	 * rows are updated once the page arrives.
+	 */
+	public T getDataAtRow(int row) {
+		int page = row / pageSize;
+		List<T> rows = pages.get(page);
+		if(null == rows) {
+			load(page, false);
+			return null;
+		}
+		int i = row % pageSize;
+		return i < rows.size() ? rows.get(i) : null; // Short if rows vanished since they were counted
+	}
+
+	public void setDataAtRow(int row, T elem) {
+		List<T> rows = pages.get(row / pageSize);
+		if(null == rows || row % pageSize >= rows.size()) return; // Read afresh when shown
+		int oldId = source.idOf(rows.set(row % pageSize, elem));
+		if(index.get(oldId) == row) index.remove(oldId);
+		index.put(source.idOf(elem), row);
+		fireTableRowsUpdated(row, row);
+	}
+
+	public void addDataRow(T elem) {
+		reset(rowCount + 1); // New elements have the highest id, so they go last
+	}
+
+	public void deleteDataRow(int row) {
+		reset(rowCount - 1);
+	}
+
+	public void updateData(T elem) {
+		int row = index.get(source.idOf(elem));
+		List<T> rows = (row < 0) ? null : pages.get(row / pageSize);
+		if(null == rows) return; // Not loaded; read afresh when shown
+		rows.set(row % pageSize, elem);
+		fireTableRowsUpdated(row, row);
+	}
+
+	public void deleteData(T elem) {
+		reset(rowCount - 1);
+	}
+
+	/**
+	 * Drops every loaded page, and sets the number of rows.
+	 */
+	private void reset(int count) {
+		rowCount = Math.max(0, count); // A failed count shows an empty table
+		int n = pageCount();
+		firstIds = new int[n];
+		lastIds = new int[n];
+		pages.clear();
+		index.clear();
+		loading.clear();
+		++generation;
+		fireTableDataChanged();
+	}
+
+	private void unindex(int page, List<T> rows) {
+		for(int i = 0; i < rows.size(); ++i) {
+			int id = source.idOf(rows.get(i));
+			if(index.get(id) == page * pageSize + i) index.remove(id); // Unless read again on another page since
+		}
+	}
+
+	private int pageCount() {
+		return (rowCount + pageSize - 1) / pageSize;
+	}
+
+	/**
+	 * Loads the given page in the background, with a single query: by
+	 * key range when the bounds of the page before it (or after it) are
+	 * known, which is the case when scrolling, or by position otherwise,
+	 * e.g. when the scroll bar is dragged far away. Only the page itself
+	 * is kept.
+	 */
+	private void load(int page, boolean prefetch) {
+		int n = pageCount();
+		if(page >= n || pages.containsKey(page) || !loading.add(page)) return;
+
+		final int afterId = (0 == page) ? 0 : lastIds[page - 1]; // 0 if not known
+		final int beforeId = (n - 1 == page) ? Integer.MAX_VALUE : firstIds[page + 1];
+		final int size = Math.min(pageSize, rowCount - page * pageSize);
+		final int gen = generation;
+		LOADER.execute(() -> {
+			List<T> rows = null;
+			try {
+				if(0 == page || 0 != afterId) rows = source.page(afterId, size);
+				else if(0 != beforeId) rows = source.pageBefore(beforeId, size);
+				else rows = source.pageAt(page * pageSize, size); // No neighbour to start from
+			} catch (RuntimeException e) {
+				LOGGER.log(Level.WARNING, "VirtualTableModel: could not load page " + page + ", " + e);
+			}
+			final List<T> fetched = rows;
+			SwingUtilities.invokeLater(() -> loaded(gen, page, prefetch, fetched));
+		});
+	}
+
+	private void loaded(int gen, int page, boolean prefetch, List<T> rows) {
+		if(gen != generation) return; // The pages were dropped in the meantime
+		loading.remove(page);
+		if(null == rows) return; // Tried again once shown again
+
+		if(!rows.isEmpty()) {
+			firstIds[page] = source.idOf(rows.get(0));
+			lastIds[page] = source.idOf(rows.get(rows.size() - 1));
+		}
+		pages.put(page, rows); // May drop the least recently shown page
+		for(int i = 0; i < rows.size(); ++i) {
+			index.put(source.idOf(rows.get(i)), page * pageSize + i);
+		}
+		fireTableRowsUpdated(page * pageSize, Math.min(rowCount, (page + 1) * pageSize) - 1);
+
+		if(!prefetch) load(page + 1, true); // The user will likely scroll on
+	}
+}
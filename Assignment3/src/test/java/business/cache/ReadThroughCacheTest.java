@@ -0,0 +1,108 @@
+package business.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link ReadThroughCache}.
+ */
+public class ReadThroughCacheTest extends TestCase {
+	private final List<Integer> loaded = new ArrayList<Integer>(); // Ids passed to the loader, in order
+	private final IntFunction<String> loader = id -> {
+		loaded.add(id);
+		return id < 0 ? null : "v" + id + "#" + loaded.size();
+	};
+
+	public void testLoadsOnceThenHits() {
+		ReadThroughCache<String> cache = new ReadThroughCache<String>(loader, 10, 0);
+		String first = cache.get(1);
+		assertEquals("v1#1", first);
+		assertSame(first, cache.get(1));
+		assertEquals(1, loaded.size());
+
+		CacheStatistics stats = cache.getStatistics();
+		assertEquals(1, stats.getHitCount());
+		assertEquals(1, stats.getMissCount());
+		assertEquals(1, stats.getLoadCount());
+		assertEquals(1, stats.getSize());
+	}
+
+	public void testNullIsNotCached() {
+		ReadThroughCache<String> cache = new ReadThroughCache<String>(loader, 10, 0);
+		assertNull(cache.get(-1));
+		assertNull(cache.get(-1));
+		assertEquals(2, loaded.size());
+		assertEquals(0, cache.getStatistics().getSize());
+	}
+
+	public void testEvictsTheLeastRecentlyUsed() {
+		ReadThroughCache<String> cache = new ReadThroughCache<String>(loader, 2, 0);
+		cache.get(1);
+		cache.get(2);
+		cache.get(1); // 2 is now the least recently used
+		cache.get(3);
+
+		assertEquals(2, cache.getStatistics().getSize());
+		assertEquals(1, cache.getStatistics().getEvictionCount());
+		loaded.clear();
+		cache.get(1);
+		cache.get(3);
+		assertTrue("1 and 3 should still be cached", loaded.isEmpty());
+		cache.get(2);
+		assertEquals(1, loaded.size());
+	}
+
+	public void testEntriesExpire() throws InterruptedException {
+		ReadThroughCache<String> cache = new ReadThroughCache<String>(loader, 10, 50);
+		String first = cache.get(1);
+		assertSame(first, cache.get(1)); // Well within the time-to-live
+
+		Thread.sleep(120);
+		String second = cache.get(1);
+		assertEquals("v1#2", second);
+		assertEquals(1, cache.getStatistics().getExpiredCount());
+		assertSame(second, cache.get(1)); // Valid again, for another time-to-live
+	}
+
+	public void testZeroTimeToLiveNeverExpires() throws InterruptedException {
+		ReadThroughCache<String> cache = new ReadThroughCache<String>(loader, 10, 0);
+		String first = cache.get(1);
+		Thread.sleep(20);
+		assertSame(first, cache.get(1));
+		assertEquals(0, cache.getStatistics().getExpiredCount());
+	}
+
+	public void testInvalidateAndPut() {
+		ReadThroughCache<String> cache = new ReadThroughCache<String>(loader, 10, 0);
+		cache.get(1);
+		cache.get(2);
+		cache.invalidate(1);
+		assertEquals("v1#3", cache.get(1));
+
+		cache.put(2, "fresh");
+		assertEquals("fresh", cache.get(2));
+
+		cache.invalidateAll();
+		assertEquals(0, cache.getStatistics().getSize());
+		assertEquals("v2#4", cache.get(2));
+	}
+
+	/**
+	 * A load that overlaps an invalidation of its entry may return
+	 * what it read, but must not cache it.
+	 */
+	public void testLoadRacingAnInvalidationIsNotCached() {
+		final List<ReadThroughCache<String>> self = new ArrayList<ReadThroughCache<String>>();
+		ReadThroughCache<String> cache = new ReadThroughCache<String>(id -> {
+			self.get(0).invalidate(id); // A writer changes the row while it is being read
+			return loader.apply(id);
+		}, 10, 0);
+		self.add(cache);
+
+		assertEquals("v1#1", cache.get(1));
+		assertEquals(0, cache.getStatistics().getSize());
+	}
+}
@@ -0,0 +1,173 @@
+package dao.memory;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import dao.EntityMetadata;
+import junit.framework.TestCase;
+import model.OrderItem;
+
+/**
+ * Unit tests for {@link MemoryTable}, on a table of its own
+ * rather than the shared {@link MemoryDatabase}.
+ */
+public class MemoryTableTest extends TestCase {
+	private MemoryTable<OrderItem> table;
+
+	protected void setUp() {
+		table = new MemoryTable<OrderItem>(EntityMetadata.forType(OrderItem.class),
+				new ReentrantReadWriteLock(), MemoryDatabase.INDEXED_COLUMNS);
+	}
+
+	public void testInsertPicksIncreasingIds() throws SQLException {
+		OrderItem a = line(0, 1, 10, 2);
+		OrderItem b = line(0, 1, 11, 3);
+		table.insert(a, null);
+		table.insert(b, null);
+		assertEquals(1, a.getId());
+		assertEquals(2, b.getId());
+		assertEquals(2, table.count());
+	}
+
+	public void testInsertWithAnIdMovesTheNextIdOn() throws SQLException {
+		table.insert(line(10, 1, 10, 1), null);
+		OrderItem next = line(0, 1, 10, 1);
+		table.insert(next, null);
+		assertEquals(11, next.getId());
+	}
+
+	public void testInsertRejectsADuplicateId() throws SQLException {
+		table.insert(line(5, 1, 10, 1), null);
+		try {
+			table.insert(line(5, 2, 20, 2), null);
+			fail("A second row with id 5 was inserted");
+		} catch (SQLException e) {
+			// Expected
+		}
+		assertEquals(1, table.findById(5).getOrder_id());
+	}
+
+	public void testRowsAreCopies() throws SQLException {
+		OrderItem inserted = line(0, 1, 10, 2);
+		table.insert(inserted, null);
+		inserted.setAmount(99); // Changing the inserted object...
+		OrderItem found = table.findById(inserted.getId());
+		assertEquals(2, found.getAmount()); // ...does not change the table
+		found.setAmount(77); // Nor does changing a row read from it
+		assertEquals(2, table.findById(inserted.getId()).getAmount());
+	}
+
+	public void testFindByIdOfAMissingRow() {
+		assertNull(table.findById(1));
+	}
+
+	public void testUpdate() throws SQLException {
+		OrderItem oi = line(0, 1, 10, 2);
+		table.insert(oi, null);
+		oi.setAmount(5);
+		assertTrue(table.update(oi, null));
+		assertEquals(5, table.findById(oi.getId()).getAmount());
+
+		assertFalse(table.update(line(42, 1, 10, 1), null)); // No such row
+		assertEquals(1, table.count());
+	}
+
+	public void testConditionalUpdate() throws SQLException {
+		OrderItem oi = line(0, 1, 10, 2);
+		table.insert(oi, null);
+		assertFalse(table.update(oi.getId(), r -> r.getAmount() >= 3, r -> r.setAmount(r.getAmount() - 3), null));
+		assertEquals(2, table.findById(oi.getId()).getAmount());
+		assertTrue(table.update(oi.getId(), r -> r.getAmount() >= 2, r -> r.setAmount(r.getAmount() - 2), null));
+		assertEquals(0, table.findById(oi.getId()).getAmount());
+	}
+
+	public void testDelete() throws SQLException {
+		OrderItem oi = line(0, 1, 10, 2);
+		table.insert(oi, null);
+		assertTrue(table.delete(oi.getId(), null));
+		assertNull(table.findById(oi.getId()));
+		assertFalse(table.delete(oi.getId(), null));
+		assertEquals(0, table.count());
+	}
+
+	public void testFindByFollowsTheIndexThroughUpdates() throws SQLException {
+		OrderItem a = line(0, 1, 10, 1);
+		OrderItem b = line(0, 2, 10, 1);
+		OrderItem c = line(0, 1, 11, 1);
+		table.insertAll(Arrays.asList(a, b, c), null);
+		assertEquals(Arrays.asList(a.getId(), c.getId()), ids(table.findBy("order_id", 1)));
+
+		b.setOrder_id(1);
+		table.update(b, null);
+		assertEquals(Arrays.asList(a.getId(), b.getId(), c.getId()), ids(table.findBy("order_id", 1)));
+		assertTrue(table.findBy("order_id", 2).isEmpty());
+
+		table.delete(a.getId(), null);
+		assertEquals(Arrays.asList(b.getId(), c.getId()), ids(table.findBy("order_id", 1)));
+		assertEquals(Arrays.asList(b.getId(), c.getId()), ids(table.findBy("amount", 1))); // Not indexed: scanned
+	}
+
+	public void testPages() throws SQLException {
+		for(int i = 0; i < 10; ++i) {
+			table.insert(line(0, 1, 10, 1), null);
+		}
+		table.delete(4, null); // Leaves a gap in the ids
+
+		assertEquals(Arrays.asList(1, 2, 3), ids(table.findPage(0, 3)));
+		assertEquals(Arrays.asList(5, 6, 7), ids(table.findPage(3, 3)));
+		assertEquals(Arrays.asList(8, 9, 10), ids(table.findPageBefore(Integer.MAX_VALUE, 3)));
+		assertEquals(Arrays.asList(2, 3, 5), ids(table.findPageBefore(6, 3)));
+		assertEquals(Arrays.asList(5, 6), ids(table.findPageAt(3, 2)));
+		assertTrue(table.findPageAt(20, 2).isEmpty());
+		assertEquals(9, table.findAll().size());
+	}
+
+	public void testRollbackUndoesEveryChange() throws SQLException {
+		OrderItem kept = line(0, 1, 10, 2);
+		OrderItem deleted = line(0, 1, 11, 3);
+		table.insertAll(Arrays.asList(kept, deleted), null);
+
+		UndoLog undo = new UndoLog();
+		table.insert(line(0, 2, 12, 4), undo);
+		kept.setAmount(20);
+		table.update(kept, undo);
+		table.delete(deleted.getId(), undo);
+		undo.rollback();
+
+		assertEquals(2, table.count());
+		assertEquals(2, table.findById(kept.getId()).getAmount());
+		assertEquals(3, table.findById(deleted.getId()).getAmount());
+		assertTrue(table.findBy("order_id", 2).isEmpty());
+	}
+
+	public void testInsertAllIsAllOrNothing() throws SQLException {
+		table.insert(line(3, 1, 10, 1), null);
+		try {
+			table.insertAll(Arrays.asList(line(1, 1, 10, 1), line(2, 1, 10, 1), line(3, 1, 10, 1)), null);
+			fail("The duplicate id 3 was inserted");
+		} catch (SQLException e) {
+			// Expected
+		}
+		assertEquals(1, table.count());
+		assertNull(table.findById(1));
+	}
+
+	private static OrderItem line(int id, int orderId, int itemId, int amount) {
+		OrderItem oi = new OrderItem();
+		oi.setId(id);
+		oi.setOrder_id(orderId);
+		oi.setItem_id(itemId);
+		oi.setAmount(amount);
+		return oi;
+	}
+
+	private static List<Integer> ids(List<OrderItem> rows) {
+		Integer[] ids = new Integer[rows.size()];
+		for(int i = 0; i < ids.length; ++i) {
+			ids[i] = rows.get(i).getId();
+		}
+		return Arrays.asList(ids);
+	}
+}
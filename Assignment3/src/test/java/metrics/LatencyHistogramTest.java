@@ -0,0 +1,106 @@
+package metrics;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest extends TestCase {
+	private static final double MAX_ERROR = 1.0 / 16; // One sub-bucket
+
+	public void testSmallValuesHaveABucketEach() {
+		for(int v = 0; v < 16; ++v) {
+			assertEquals(v, LatencyHistogram.bucketOf(v));
+			assertEquals(v, LatencyHistogram.lowerBoundOf(v));
+		}
+	}
+
+	public void testEveryValueFallsWithinItsBucket() {
+		int previous = -1;
+		for(long v = 0; v < 1 << 20; ++v) {
+			int bucket = LatencyHistogram.bucketOf(v);
+			assertTrue("buckets go down at " + v, bucket >= previous);
+			assertTrue(v + " below its bucket", LatencyHistogram.lowerBoundOf(bucket) <= v);
+			assertTrue(v + " above its bucket", v < LatencyHistogram.lowerBoundOf(bucket + 1));
+			previous = bucket;
+		}
+	}
+
+	public void testBucketsAreNarrow() {
+		for(int bucket = 16; bucket < LatencyHistogram.bucketOf(1L << 40); ++bucket) {
+			long low = LatencyHistogram.lowerBoundOf(bucket);
+			long width = LatencyHistogram.lowerBoundOf(bucket + 1) - low;
+			assertTrue("bucket " + bucket + " is too wide", width <= low * MAX_ERROR);
+		}
+	}
+
+	public void testHugeValuesGoInTheLastBucket() {
+		int last = LatencyHistogram.bucketOf(Long.MAX_VALUE);
+		assertEquals(last, LatencyHistogram.bucketOf((1L << 41) + 12345));
+		assertTrue(last >= LatencyHistogram.bucketOf(1L << 40));
+
+		LatencyHistogram h = new LatencyHistogram();
+		h.record(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, h.getMax());
+		assertEquals(Long.MAX_VALUE, h.percentile(0.5));
+	}
+
+	public void testEmptyHistogram() {
+		LatencyHistogram h = new LatencyHistogram();
+		assertEquals(0, h.percentile(0.5));
+		assertEquals(0, h.percentile(1.0));
+		assertEquals(0, h.getMax());
+	}
+
+	public void testPercentilesOfSmallValuesAreExact() {
+		LatencyHistogram h = new LatencyHistogram();
+		for(int v = 0; v < 10; ++v) {
+			h.record(v);
+		}
+		assertEquals(4, h.percentile(0.5)); // The 5th of 10 values
+		assertEquals(9, h.percentile(1.0));
+		assertEquals(0, h.percentile(0.0));
+	}
+
+	public void testPercentilesAreWithinOneBucket() {
+		LatencyHistogram h = new LatencyHistogram();
+		for(int v = 1; v <= 10000; ++v) {
+			h.record(v);
+		}
+		assertNear(5000, h.percentile(0.5));
+		assertNear(9000, h.percentile(0.9));
+		assertNear(9900, h.percentile(0.99));
+		assertEquals(10000, h.percentile(1.0)); // Never above the maximum
+		assertEquals(10000, h.getMax());
+	}
+
+	public void testSingleValueIsReportedExactly() {
+		LatencyHistogram h = new LatencyHistogram();
+		h.record(12345);
+		assertEquals(12345, h.percentile(0.01));
+		assertEquals(12345, h.percentile(0.99));
+	}
+
+	public void testNegativeValuesCountAsZero() {
+		LatencyHistogram h = new LatencyHistogram();
+		h.record(-5);
+		assertEquals(0, h.percentile(1.0));
+		assertEquals(0, h.getMax());
+	}
+
+	public void testReset() {
+		LatencyHistogram h = new LatencyHistogram();
+		h.record(100);
+		h.record(200);
+		h.reset();
+		assertEquals(0, h.percentile(0.5));
+		assertEquals(0, h.getMax());
+		h.record(7);
+		assertEquals(7, h.percentile(0.5));
+	}
+
+	private static void assertNear(long expected, long actual) {
+		assertTrue("expected about " + expected + " but was " + actual,
+				actual >= expected && actual <= expected * (1 + MAX_ERROR));
+	}
+}
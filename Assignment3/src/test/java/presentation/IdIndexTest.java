@@ -0,0 +1,129 @@
+package presentation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link IdIndex}.
+ */
+public class IdIndexTest extends TestCase {
+	private static final int SLOTS = 16; // What a new, small index starts with
+
+	public void testMissingIdHasNoRow() {
+		IdIndex index = new IdIndex(0);
+		assertEquals(-1, index.get(42));
+		index.remove(42); // Nothing to remove; must not fail
+		assertEquals(-1, index.get(42));
+	}
+
+	public void testPutReplacesTheRow() {
+		IdIndex index = new IdIndex(0);
+		index.put(7, 3);
+		index.put(7, 5);
+		assertEquals(5, index.get(7));
+	}
+
+	public void testClear() {
+		IdIndex index = new IdIndex(0);
+		index.put(1, 0);
+		index.put(2, 1);
+		index.clear();
+		assertEquals(-1, index.get(1));
+		assertEquals(-1, index.get(2));
+	}
+
+	/**
+	 * Three ids that all hash to the last slot take the last slot and
+	 * the first two (the probe wraps around). Removing the first must
+	 * move the other two back, across the end of the table, so that
+	 * they can still be found.
+	 */
+	public void testRemoveShiftsBackAcrossTheWrapAround() {
+		int[] ids = idsWithHomeSlot(SLOTS - 1, 3);
+		IdIndex index = new IdIndex(0);
+		for(int i = 0; i < ids.length; ++i) {
+			index.put(ids[i], i);
+		}
+
+		index.remove(ids[0]);
+		assertEquals(-1, index.get(ids[0]));
+		assertEquals(1, index.get(ids[1]));
+		assertEquals(2, index.get(ids[2]));
+
+		index.remove(ids[1]);
+		assertEquals(-1, index.get(ids[1]));
+		assertEquals(2, index.get(ids[2]));
+	}
+
+	/**
+	 * An id that hashes to the first slot sits right after entries that
+	 * wrapped around into it; it must not be moved before its own slot
+	 * when one of them is removed.
+	 */
+	public void testRemoveKeepsEntriesAtTheirHomeSlot() {
+		int[] last = idsWithHomeSlot(SLOTS - 1, 2);
+		int[] first = idsWithHomeSlot(0, 1);
+		IdIndex index = new IdIndex(0);
+		index.put(last[0], 10); // Slot 15
+		index.put(last[1], 11); // Wraps to slot 0
+		index.put(first[0], 12); // Probes on to slot 1
+
+		index.remove(last[1]);
+		assertEquals(10, index.get(last[0]));
+		assertEquals(12, index.get(first[0]));
+		index.remove(last[0]);
+		assertEquals(12, index.get(first[0]));
+	}
+
+	public void testGrowsPastItsInitialSize() {
+		IdIndex index = new IdIndex(0);
+		for(int id = 1; id <= 1000; ++id) {
+			index.put(id, id * 2);
+		}
+		for(int id = 1; id <= 1000; ++id) {
+			assertEquals(id * 2, index.get(id));
+		}
+	}
+
+	public void testMatchesAHashMap() {
+		Random random = new Random(1);
+		IdIndex index = new IdIndex(0);
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+		for(int n = 0; n < 200000; ++n) {
+			int id = random.nextInt(2000) * (random.nextBoolean() ? 1 : 1024); // Some clustered, some spread out
+			switch(random.nextInt(3)) {
+				case 0:
+					int row = random.nextInt(100000);
+					index.put(id, row);
+					expected.put(id, row);
+					break;
+				case 1:
+					index.remove(id);
+					expected.remove(id);
+					break;
+				default:
+					Integer row2 = expected.get(id);
+					assertEquals(null == row2 ? -1 : row2.intValue(), index.get(id));
+			}
+		}
+		for(Map.Entry<Integer, Integer> e : expected.entrySet()) {
+			assertEquals(e.getValue().intValue(), index.get(e.getKey()));
+		}
+	}
+
+	/**
+	 * Finds the first few positive ids that a 16-slot index
+	 * puts in the given slot (mirrors IdIndex's hashing).
+	 */
+	private static int[] idsWithHomeSlot(int slot, int count) {
+		int[] ids = new int[count];
+		int found = 0;
+		for(int id = 1; found < count; ++id) {
+			if((id * 0x9E3779B9) >>> 28 == slot) ids[found++] = id;
+		}
+		return ids;
+	}
+}